@@ -9,9 +9,12 @@ group = "ture"
 version = "0.0.1"
 description = "hw2"
 
+// Версия JDK сборки: ./gradlew build -PjavaVersion=21 включает исходники src/main/java21 (виртуальные потоки)
+val javaVersion = (findProperty("javaVersion") as String?)?.toInt() ?: 17
+
 java {
     toolchain {
-        languageVersion = JavaLanguageVersion.of(17)
+        languageVersion = JavaLanguageVersion.of(javaVersion)
     }
 }
 
@@ -45,6 +48,9 @@ dependencies {
 
     // Для JSON логов
     implementation("com.fasterxml.jackson.core:jackson-databind")
+    implementation("org.apache.logging.log4j:log4j-layout-template-json")
+    // асинхронные логгеры (AsyncLogger/AsyncRoot в log4j2-prod.xml)
+    implementation("com.lmax:disruptor:3.4.4")
 
     implementation("org.flywaydb:flyway-core")
     implementation("org.flywaydb:flyway-database-postgresql")
@@ -56,9 +62,21 @@ dependencies {
     annotationProcessor("org.springframework.boot:spring-boot-configuration-processor")
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testImplementation("org.springframework.graphql:spring-graphql-test")
+    // PostgreSQL в контейнере для тестов sql-запросов (без Docker такие тесты пропускаются)
+    testImplementation("org.testcontainers:postgresql")
+    testImplementation("org.testcontainers:junit-jupiter")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 
     implementation("org.springframework.boot:spring-boot-starter-actuator")
+    // метрики в формате Prometheus (/actuator/prometheus)
+    implementation("io.micrometer:micrometer-registry-prometheus")
+
+    // Кэш в памяти процесса (счета) и провайдер JCache для кэша второго уровня Hibernate
+    implementation("com.github.ben-manes.caffeine:caffeine")
+    implementation("com.github.ben-manes.caffeine:jcache")
+    implementation("org.hibernate.orm:hibernate-jcache")
+    // статистика Hibernate (в т.ч. кэша второго уровня) в метриках actuator
+    implementation("org.hibernate.orm:hibernate-micrometer")
 
     implementation("org.springdoc:springdoc-openapi-starter-webmvc-ui:2.8.5")
 
@@ -110,10 +128,60 @@ sourceSets {
                 "build/generated/source/proto/main/java",
                 "build/generated/source/proto/main/grpc"
             )
+            if (javaVersion >= 21) {
+                srcDir("src/main/java21")
+            }
         }
     }
 }
 
+// === Бенчмарки JMH (src/jmh/java) ===
+// ./gradlew jmh                        - все бенчмарки
+// ./gradlew jmh -Pjmh.includes=Money   - по регулярному выражению имени
+// Результаты: build/reports/jmh/results.json
+val jmh by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations {
+    named("jmhImplementation") {
+        extendsFrom(configurations.implementation.get())
+    }
+    named("jmhRuntimeOnly") {
+        extendsFrom(configurations.runtimeOnly.get())
+    }
+}
+
+dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+    // СУБД для сквозного бенчмарка, если не задан -Dbench.db.url
+    "jmhImplementation"("org.testcontainers:postgresql")
+}
+
+tasks.register<JavaExec>("jmh") {
+    description = "Runs JMH benchmarks"
+    group = "benchmark"
+    classpath = jmh.runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+    val results = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+    doFirst { results.parentFile.mkdirs() }
+    args((findProperty("jmh.includes") as String?) ?: ".*", "-rf", "json", "-rff", results.path)
+    // параметры сквозного бенчмарка (bench.db.url, bench.db.username, bench.db.password)
+    systemProperties(System.getProperties().filterKeys { (it as String).startsWith("bench.") }
+        .mapKeys { it.key as String })
+}
+
+// Бенчмарк конкуренции jpa/optimistic на отдельной базе:
+// ./gradlew contentionBenchmark --args='--spring.datasource.url=jdbc:postgresql://localhost:5432/bench'
+tasks.register<JavaExec>("contentionBenchmark") {
+    description = "Runs the pessimistic vs optimistic contention benchmark"
+    group = "benchmark"
+    classpath = jmh.runtimeClasspath
+    mainClass = "ture.app.benchmarks.ContentionBenchmarkRunner"
+}
+
 // === Очистка сгенерированных файлов ===
 tasks {
     clean {
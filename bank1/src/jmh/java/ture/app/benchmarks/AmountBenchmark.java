@@ -0,0 +1,51 @@
+package ture.app.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ture.app.dto.AccountDTO;
+import ture.app.dto.TransactionDTO;
+import ture.app.money.Money;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Разбор и форматирование сумм (Money) и конструкторы DTO, которые форматируют суммы
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AmountBenchmark {
+    private String amountText = "123456.78";
+    private long amount = 12345678L;
+    private Long boxedAmount = 12345678L;
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Benchmark
+    public long parse() {
+        return Money.parse(amountText);
+    }
+
+    @Benchmark
+    public String format() {
+        return Money.format(amount);
+    }
+
+    @Benchmark
+    public AccountDTO accountDto() {
+        return new AccountDTO(1L, "main", boxedAmount, 1L, createdAt, null, null);
+    }
+
+    @Benchmark
+    public TransactionDTO transactionDto() {
+        return new TransactionDTO(1L, createdAt, new AccountDTO(1L), new AccountDTO(2L), boxedAmount);
+    }
+}
@@ -0,0 +1,147 @@
+package ture.app.benchmarks;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ture.app.Hw2Application;
+import ture.app.service.AccountService;
+import ture.app.service.JpaTransferService;
+import ture.app.service.OptimisticTransferService;
+import ture.app.service.UserService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Бенчмарк конкуренции: пессимистичный (jpa) и оптимистичный (optimistic) режимы перевода.
+// Для чего это нужно:
+// - Переводы выполняются в несколько потоков между случайными счетами из "горячего" набора
+// - Чем меньше набор, тем выше конкуренция за одни и те же счета
+// - По результатам видно, с какого размера набора оптимистичный режим становится выгоднее (точка пересечения)
+//
+// Запуск (нужна отдельная база - создаются пользователь и счета), контекст без веб-сервера и gRPC:
+// ./gradlew contentionBenchmark --args='--spring.datasource.url=jdbc:postgresql://localhost:5432/bench'
+// Лежит в исходниках бенчмарков, а не в src/main - в сборку приложения не попадает.
+public class ContentionBenchmarkRunner implements CommandLineRunner {
+    private static final Logger logger = LogManager.getLogger(ContentionBenchmarkRunner.class);
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private JpaTransferService jpaTransferService;
+
+    @Autowired
+    private OptimisticTransferService optimisticTransferService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.benchmark.threads:8}")
+    private int threads;
+
+    @Value("${app.benchmark.transfers-per-thread:500}")
+    private int transfersPerThread;
+
+    // размеры "горячего" набора счетов (от максимальной конкуренции к минимальной)
+    @Value("${app.benchmark.hot-accounts:2,4,8,16,64,256}")
+    private int[] hotAccounts;
+
+    public static void main(String[] args) {
+        // раннер - источник конфигурации наравне с приложением (в сканирование пакетов ture.app не входит)
+        new SpringApplicationBuilder(Hw2Application.class, ContentionBenchmarkRunner.class)
+                .web(WebApplicationType.NONE)
+                .properties("grpc.server.port=-1")
+                .run(args)
+                .close();
+    }
+
+    // результат одного прогона
+    private record Result(int accounts, double pessimistic, double optimistic, int pessimisticFailed, int optimisticFailed) {}
+
+    @Override
+    public void run(String... args) throws Exception {
+        int maxAccounts = 0;
+        for (int n : hotAccounts) maxAccounts = Math.max(maxAccounts, n);
+
+        // счета с запасом средств, чтобы переводы не отклонялись по остатку
+        var user = userService.createUser("benchmark-" + System.currentTimeMillis(), "benchmark@localhost");
+        var ids = new ArrayList<Long>(maxAccounts);
+        for (int i = 0; i < maxAccounts; i++)
+            ids.add(accountService.create(user.getId(), "benchmark " + i).getId());
+        jdbcTemplate.update("UPDATE accounts SET amount = 100000000 WHERE user_id = ?", user.getId());
+
+        var results = new ArrayList<Result>();
+        for (int n : hotAccounts) {
+            var hot = ids.subList(0, n);
+            var pessimistic = measure(hot, (pair) -> jpaTransferService.transfer(pair[0], pair[1], 1L));
+            var optimistic = measure(hot, (pair) -> optimisticTransferService.transfer(pair[0], pair[1], 1L));
+            results.add(new Result(n, pessimistic[0], optimistic[0], (int) pessimistic[1], (int) optimistic[1]));
+        }
+
+        logger.info("Contention benchmark: {} threads x {} transfers", threads, transfersPerThread);
+        logger.info(String.format("%10s %15s %15s %10s %10s", "accounts", "jpa ops/s", "optimistic ops/s", "jpa err", "opt err"));
+        Integer crossover = null;
+        for (var r : results) {
+            logger.info(String.format("%10d %15.1f %15.1f %10d %10d",
+                    r.accounts(), r.pessimistic(), r.optimistic(), r.pessimisticFailed(), r.optimisticFailed()));
+            if(crossover == null && r.optimistic() >= r.pessimistic())
+                crossover = r.accounts();
+        }
+        if(crossover != null)
+            logger.info("Optimistic mode wins from {} hot accounts", crossover);
+        else
+            logger.info("Optimistic mode did not win in any scenario");
+    }
+
+    // прогон: {переводов в секунду, число ошибок}
+    private double[] measure(List<Long> hot, Consumer<Long[]> transfer) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        var done = new CountDownLatch(threads);
+        var failed = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                var random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < transfersPerThread; i++) {
+                        var from = hot.get(random.nextInt(hot.size()));
+                        var to = hot.get(random.nextInt(hot.size()));
+                        if(from.equals(to)) to = hot.get((hot.indexOf(from) + 1) % hot.size());
+                        try {
+                            transfer.accept(new Long[]{from, to});
+                        } catch (RuntimeException e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        double ops = (double) threads * transfersPerThread - failed.get();
+        return new double[]{ops / (elapsed / 1_000_000_000.0), failed.get()};
+    }
+}
@@ -0,0 +1,51 @@
+package ture.app.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ture.app.dto.AccountDTO;
+import ture.app.dto.TransactionDTO;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// JSON платежа: разбор запроса и запись ответа (ObjectMapper с модулями, как у Spring MVC)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+    private ObjectMapper mapper;
+    private TransactionDTO response;
+    private String request;
+
+    @Setup
+    public void setup() {
+        mapper = JsonMapper.builder().findAndAddModules().build();
+        var from = new AccountDTO(2L, "main", 99_900L, 1L, LocalDateTime.now(), null, null);
+        response = new TransactionDTO(123456789L, LocalDateTime.now(), from, new AccountDTO(1L), 100L);
+        request = "{\"from_acc\": {\"id\": 2},\"to_acc\": {\"id\": 1},\"amount\": \"1.00\"}";
+    }
+
+    @Benchmark
+    public String writeResponse() throws JsonProcessingException {
+        return mapper.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public TransactionDTO readRequest() throws JsonProcessingException {
+        return mapper.readValue(request, TransactionDTO.class);
+    }
+}
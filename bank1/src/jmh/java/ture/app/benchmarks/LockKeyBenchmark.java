@@ -0,0 +1,63 @@
+package ture.app.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ture.app.entity.Account;
+import ture.app.entity.Lockable;
+import ture.app.native_sql.LockKey;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Ключи advisory-блокировок: по сущности (как AppLocks.getLockKey) и по id (как LockAspect),
+// а также упорядочивание ключей двух счетов перед блокировкой
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LockKeyBenchmark {
+    // блокируемая сущность без JPA (у Account нет setId)
+    private record Entity(Long id) implements Lockable {
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public int lockClassId() {
+            return Account.LOCK_CLASS_ID;
+        }
+    }
+
+    private Object from = new Entity(1_000_001L);
+    private Object to = new Entity(42L);
+    private long fromId = 1_000_001L;
+    private long toId = 42L;
+
+    @Benchmark
+    public LockKey ofEntity() {
+        return LockKey.of(from);
+    }
+
+    @Benchmark
+    public LockKey ofId() {
+        return LockKey.of(Account.LOCK_CLASS_ID, fromId);
+    }
+
+    @Benchmark
+    public List<LockKey> orderedPair() {
+        return List.of(LockKey.of(from), LockKey.of(to)).stream()
+                .sorted()
+                .distinct()
+                .toList();
+    }
+}
@@ -0,0 +1,134 @@
+package ture.app.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import ture.app.Hw2Application;
+import ture.app.entity.Transaction;
+import ture.app.service.TransactionService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Сквозной бенчмарк TransactionService.create: контекст приложения без веб-сервера и gRPC, миграции Flyway,
+// переводы в несколько потоков.
+// - uncontended - у каждого потока своя пара счетов
+// - hot         - все потоки переводят со своих счетов на один "горячий" счёт
+// СУБД: -Dbench.db.url=jdbc:postgresql://localhost:5432/bench (отдельная база - создаются пользователь и счета),
+// без него - PostgreSQL в контейнере (Testcontainers, нужен Docker).
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class TransferBenchmark {
+    // число потоков с запасом: у каждого потока свой счёт (и своя пара в uncontended)
+    private static final int MAX_THREADS = 64;
+
+    @State(Scope.Benchmark)
+    public static class App {
+        @Param({"uncontended", "hot"})
+        public String scenario;
+
+        @Param({"jpa", "single_statement", "optimistic"})
+        public String mode;
+
+        PostgreSQLContainer<?> postgres;
+        ConfigurableApplicationContext context;
+        TransactionService transactionService;
+        // счета потоков: [2 * i] - источник, [2 * i + 1] - получатель в uncontended
+        List<Long> accounts;
+        Long hotAccount;
+        final AtomicInteger threads = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void start() {
+            var url = System.getProperty("bench.db.url");
+            var username = System.getProperty("bench.db.username", "postgres");
+            var password = System.getProperty("bench.db.password", "postgres");
+            if(url == null) {
+                postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+                postgres.start();
+                url = postgres.getJdbcUrl();
+                username = postgres.getUsername();
+                password = postgres.getPassword();
+            }
+
+            context = new SpringApplicationBuilder(Hw2Application.class)
+                    .web(WebApplicationType.NONE)
+                    .properties(
+                            "spring.datasource.url=" + url,
+                            "spring.datasource.username=" + username,
+                            "spring.datasource.password=" + password,
+                            "spring.datasource.hikari.maximum-pool-size=" + MAX_THREADS,
+                            "spring.jpa.show-sql=false",
+                            "logging.level.ture.app=WARN",
+                            "logging.level.org.hibernate=WARN",
+                            "grpc.server.port=-1",
+                            "app.transfer.mode=" + mode)
+                    .run();
+            transactionService = context.getBean(TransactionService.class);
+
+            // счета с запасом средств, чтобы переводы не отклонялись по остатку
+            var jdbc = context.getBean(JdbcTemplate.class);
+            var userId = jdbc.queryForObject(
+                    "INSERT INTO users (name, email) VALUES (?, ?) RETURNING id", Long.class,
+                    "benchmark-" + System.nanoTime(), "benchmark@localhost");
+            accounts = new ArrayList<>(2 * MAX_THREADS);
+            for (int i = 0; i < 2 * MAX_THREADS; i++)
+                accounts.add(jdbc.queryForObject(
+                        "INSERT INTO accounts (user_id, name, amount) VALUES (?, ?, ?) RETURNING id", Long.class,
+                        userId, "benchmark " + i, 100_000_000_000L));
+            hotAccount = jdbc.queryForObject(
+                    "INSERT INTO accounts (user_id, name, amount) VALUES (?, ?, 0) RETURNING id", Long.class,
+                    userId, "benchmark hot");
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            if(context != null)
+                context.close();
+            if(postgres != null)
+                postgres.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Pair {
+        Long from;
+        Long to;
+
+        @Setup(Level.Trial)
+        public void assign(App app) {
+            int i = app.threads.getAndIncrement();
+            if(i >= MAX_THREADS)
+                throw new IllegalStateException("Too many benchmark threads, max " + MAX_THREADS);
+            from = app.accounts.get(2 * i);
+            to = app.scenario.equals("hot") ? app.hotAccount : app.accounts.get(2 * i + 1);
+        }
+    }
+
+    @Benchmark
+    public Transaction create(App app, Pair pair) {
+        return app.transactionService.create(pair.from, pair.to, 1L);
+    }
+}
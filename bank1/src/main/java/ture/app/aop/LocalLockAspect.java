@@ -0,0 +1,52 @@
+package ture.app.aop;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import ture.app.entity.Account;
+import ture.app.lock.StripedLocks;
+import ture.app.service.ShardedAccounts;
+
+// Блокировка счетов перевода внутри узла.
+// Наивысший приоритет - аспект выполняется до начала транзакции, т.е. до получения соединения из пула.
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class LocalLockAspect {
+    @Autowired
+    private StripedLocks stripedLocks;
+
+    @Autowired
+    private ShardedAccounts shardedAccounts;
+
+    @Value("${app.locks.local.enabled:true}")
+    private boolean enabled;
+
+    @Around("execution(* ture.app.service.TransactionService.create(..))")
+    public Object lock(ProceedingJoinPoint joinPoint) throws Throwable {
+        var args = joinPoint.getArgs();
+        var from = accountId(args[0]);
+        var to = accountId(args[1]);
+        if(!enabled || from == null || to == null)
+            return joinPoint.proceed();
+
+        // зачисления на горячий счёт идут в корзины и друг друга не ждут
+        var keys = shardedAccounts.isSharded(to) ? new long[]{from} : new long[]{from, to};
+        try (var ignored = stripedLocks.lock(keys)) {
+            return joinPoint.proceed();
+        }
+    }
+
+    private Long accountId(Object arg) {
+        if(arg instanceof Long id)
+            return id;
+        if(arg instanceof Account account)
+            return account.getId();
+        return null;
+    }
+}
@@ -3,19 +3,72 @@ package ture.app.aop;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ture.app.entity.Lockable;
 import ture.app.native_sql.AppLocks;
+import ture.app.native_sql.LockKey;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Блокировка аргументов методов, помеченных @Locked.
+// Низший приоритет - аспект выполняется внутри транзакции (см. TransactionConfig).
 @Aspect
 @Component
+@Order(Ordered.LOWEST_PRECEDENCE)
 public class LockAspect {
+    // параметр не блокируется
+    private static final int SKIP = 0;
+    // параметр - сама сущность (Lockable)
+    private static final int ENTITY = -1;
+
     @Autowired
     private AppLocks appLocks;
 
-    @Before("execution(* ture.app.repository.*.save(..))")
+    // что блокировать по каждому параметру метода (разбор аннотаций - один раз на метод)
+    private final Map<Method, int[]> plans = new ConcurrentHashMap<>();
+
+    @Before("@annotation(ture.app.aop.Locked)")
     public void lock(JoinPoint joinPoint) {
-        Object entity = joinPoint.getArgs()[0];
-        appLocks.lock(entity);
+        if(!TransactionSynchronizationManager.isActualTransactionActive())
+            throw new IllegalStateException("@Locked method must be called within a transaction");
+
+        var method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        var plan = plans.computeIfAbsent(method, LockAspect::plan);
+        var args = joinPoint.getArgs();
+
+        var keys = new ArrayList<LockKey>(args.length);
+        for (int i = 0; i < args.length; i++) {
+            if(plan[i] == SKIP || args[i] == null)
+                continue;
+            var key = plan[i] == ENTITY
+                    ? LockKey.of(args[i])
+                    : LockKey.of(plan[i], ((Number) args[i]).longValue());
+            if(key != null)
+                keys.add(key);
+        }
+        appLocks.lock(keys);
+    }
+
+    private static int[] plan(Method method) {
+        var params = method.getParameters();
+        var plan = new int[params.length];
+        for (int i = 0; i < params.length; i++) {
+            var lockedId = params[i].getAnnotation(LockedId.class);
+            if(lockedId != null)
+                plan[i] = lockedId.value();
+            else if(Lockable.class.isAssignableFrom(params[i].getType()))
+                plan[i] = ENTITY;
+            else
+                plan[i] = SKIP;
+        }
+        return plan;
     }
 }
@@ -0,0 +1,14 @@
+package ture.app.aop;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Метод, перед выполнением которого (внутри транзакции) берутся advisory-блокировки СУБД:
+// - по аргументам-сущностям (Lockable)
+// - по аргументам-id, помеченным @LockedId (блокировка до загрузки сущности)
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Locked {
+}
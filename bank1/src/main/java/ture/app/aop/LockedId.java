@@ -0,0 +1,14 @@
+package ture.app.aop;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Аргумент метода @Locked - id блокируемой сущности.
+// value - номер класса в ключе блокировки (например, Account.LOCK_CLASS_ID)
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface LockedId {
+    int value();
+}
@@ -0,0 +1,120 @@
+package ture.app.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ture.app.native_sql.UsersSql;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+// Кэш сведений о счетах (владелец, наименование, блокировка/закрытие) и, при включении, остатков.
+// Для чего это нужно:
+// - Чтение сведений и остатков не идёт в СУБД при каждом запросе
+// - Размер ограничен, записи вытесняются по размеру и по времени жизни
+// - Транзакции, изменяющие счёт, сбрасывают его записи после commit
+// - Попадания и промахи видны в actuator: /actuator/metrics/cache.gets?tag=cache:accounts.meta
+// Кэш не источник истины: перевод проверяет счета под блокировкой заново. Остаток может быть
+// прочитан до commit и положен в кэш после сброса, поэтому у остатков короткое время жизни.
+@Component
+public class AccountCache {
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${app.accounts.cache.max-size:100000}")
+    private long maxSize;
+
+    @Value("${app.accounts.cache.ttl-ms:600000}")
+    private long ttlMs;
+
+    // записи, по которым платёж отклоняется без СУБД (счёта нет, заблокирован, закрыт): изменения на других
+    // узлах сюда не доходят, поэтому держим их секунды - разблокированный счёт не отклоняется долго
+    @Value("${app.accounts.cache.reject-ttl-ms:5000}")
+    private long rejectTtlMs;
+
+    @Value("${app.accounts.cache.balances.enabled:true}")
+    private boolean balancesEnabled;
+
+    @Value("${app.accounts.cache.balances.ttl-ms:1000}")
+    private long balancesTtlMs;
+
+    // пустое значение - счёта нет (тоже кэшируется, сбрасывается при создании счёта)
+    private Cache<Long, Optional<UsersSql.AccountMeta>> meta;
+    private Cache<Long, Optional<Long>> balances;
+
+    @PostConstruct
+    public void start() {
+        var ttl = Duration.ofMillis(ttlMs);
+        var rejectTtl = Duration.ofMillis(Math.min(rejectTtlMs, ttlMs));
+        meta = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.<Long, Optional<UsersSql.AccountMeta>>writing((id, value) ->
+                        value.isEmpty() || value.get().isBlocked() || value.get().isClosed() ? rejectTtl : ttl))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, meta, "accounts.meta");
+        if(balancesEnabled) {
+            balances = Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(Duration.ofMillis(balancesTtlMs))
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(registry, balances, "accounts.balance");
+        }
+    }
+
+    public Optional<UsersSql.AccountMeta> getMeta(Long accountId, Function<Long, Optional<UsersSql.AccountMeta>> loader) {
+        return meta.get(accountId, loader);
+    }
+
+    // остаток (null - счёт не найден); без кэша остатков - всегда из СУБД
+    public Long getBalance(Long accountId, Function<Long, Long> loader) {
+        if(balances == null)
+            return loader.apply(accountId);
+        return balances.get(accountId, id -> Optional.ofNullable(loader.apply(id))).orElse(null);
+    }
+
+    // сброс записей счетов после commit текущей транзакции (без транзакции - сразу)
+    public void evictAfterCommit(Long... accountIds) {
+        evictAfterCommit(Arrays.asList(accountIds));
+    }
+
+    public void evictAfterCommit(Iterable<Long> accountIds) {
+        var ids = copy(accountIds);
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(ids);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict(ids);
+            }
+        });
+    }
+
+    private void evict(List<Long> ids) {
+        meta.invalidateAll(ids);
+        if(balances != null)
+            balances.invalidateAll(ids);
+    }
+
+    private static List<Long> copy(Iterable<Long> ids) {
+        var list = new ArrayList<Long>();
+        for (var id : ids)
+            if(id != null) list.add(id);
+        return list;
+    }
+}
@@ -0,0 +1,24 @@
+package ture.app.cache;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ture.app.entity.Account;
+
+// Сброс кэша счетов при изменении сущности Account через JPA (перевод в режиме jpa/optimistic,
+// смена наименования, создание и удаление). Hibernate берёт слушатель из контекста Spring.
+// Изменения в обход JPA сбрасывают кэш сами (TransferSql, BatchTransferSql, AccountBucketsSql).
+@Component
+public class AccountCacheListener {
+    @Autowired
+    private AccountCache accountCache;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void changed(Account account) {
+        accountCache.evictAfterCommit(account.getId());
+    }
+}
@@ -0,0 +1,117 @@
+package ture.app.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Недавно изменённые счета и пользователи - для чтения своих записей при работе с репликой (app.db.replica.enabled).
+// Для чего это нужно:
+// - Read-only транзакции читают с реплики, а она отстаёт от основной СУБД
+// - Чтение счёта или пользователя, изменённого в последние read-your-writes-ms, идёт в основную СУБД:
+//   клиент сразу после перевода видит новый остаток и операцию в выписке
+// Закрепление действует на соединения, полученные внутри onPrimary: read-only транзакцию, уже начавшую
+// читать с реплики, оно не переключает. Без реплики класс ничего не хранит.
+@Component
+public class RecentWrites {
+    private static final ThreadLocal<Boolean> pinned = new ThreadLocal<>();
+
+    @Value("${app.db.replica.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.db.replica.read-your-writes-ms:5000}")
+    private long windowMs;
+
+    @Value("${app.accounts.cache.max-size:100000}")
+    private long maxSize;
+
+    private Cache<Long, Boolean> accounts;
+    private Cache<Long, Boolean> users;
+
+    @PostConstruct
+    public void start() {
+        if(!enabled)
+            return;
+        accounts = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(windowMs))
+                .build();
+        users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(windowMs))
+                .build();
+    }
+
+    // отметка изменённых счетов (после commit текущей транзакции, без транзакции - сразу)
+    public void accounts(Long... accountIds) {
+        accounts(Arrays.asList(accountIds));
+    }
+
+    public void accounts(Iterable<Long> accountIds) {
+        if(enabled)
+            afterCommit(accounts, accountIds);
+    }
+
+    public void user(Long userId) {
+        if(enabled)
+            afterCommit(users, List.of(userId));
+    }
+
+    // чтение счёта: недавно изменённый - из основной СУБД
+    public <T> T readAccount(Long accountId, Supplier<T> read) {
+        return enabled && accountId != null && accounts.getIfPresent(accountId) != null ? onPrimary(read) : read.get();
+    }
+
+    // чтение пользователя: недавно изменённый - из основной СУБД
+    public <T> T readUser(Long userId, Supplier<T> read) {
+        return enabled && userId != null && users.getIfPresent(userId) != null ? onPrimary(read) : read.get();
+    }
+
+    // соединения, полученные внутри read, берутся из основной СУБД (см. ReplicaRoutingDataSource)
+    public static <T> T onPrimary(Supplier<T> read) {
+        if(Boolean.TRUE.equals(pinned.get()))
+            return read.get();
+        pinned.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            pinned.remove();
+        }
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return Boolean.TRUE.equals(pinned.get());
+    }
+
+    private static void afterCommit(Cache<Long, Boolean> cache, Iterable<Long> ids) {
+        var list = new ArrayList<Long>();
+        for (var id : ids)
+            if(id != null) list.add(id);
+        if(list.isEmpty())
+            return;
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(cache, list);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                put(cache, list);
+            }
+        });
+    }
+
+    private static void put(Cache<Long, Boolean> cache, List<Long> ids) {
+        for (var id : ids)
+            cache.put(id, Boolean.TRUE);
+    }
+}
@@ -0,0 +1,67 @@
+package ture.app.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+// Ограничение одновременных обращений к СУБД размером пула соединений (app.db.semaphore.enabled).
+// Включается в профиле virtual: сам пул соединений остаётся прежним, очередь к нему - на семафоре
+@Configuration
+@ConditionalOnProperty(name = "app.db.semaphore.enabled", havingValue = "true")
+public class DataSourceLimitConfig {
+
+    // семафор - непосредственно над пулом, до остальных обёрток (ReadReplicaConfig)
+    @Bean
+    public static BeanPostProcessor boundedDataSourcePostProcessor(Environment environment) {
+        var timeoutMs = environment.getProperty("app.db.semaphore.timeout-ms", Long.class, 30000L);
+        return new BoundedPostProcessor(timeoutMs);
+    }
+
+    private static class BoundedPostProcessor implements BeanPostProcessor, Ordered {
+        private final long timeoutMs;
+
+        BoundedPostProcessor(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if(!(bean instanceof HikariDataSource hikari))
+                return bean;
+            return new BoundedDataSource(hikari, hikari.getMaximumPoolSize(), timeoutMs);
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+
+    // свободные разрешения и очередь ожидающих соединения
+    @Bean
+    public MeterBinder boundedDataSourceMetrics(DataSource dataSource) {
+        return registry -> {
+            BoundedDataSource bounded;
+            try {
+                if(!dataSource.isWrapperFor(BoundedDataSource.class))
+                    return;
+                bounded = dataSource.unwrap(BoundedDataSource.class);
+            } catch (SQLException e) {
+                return;
+            }
+            Gauge.builder("app.db.semaphore.available", bounded, BoundedDataSource::getAvailablePermits)
+                    .register(registry);
+            Gauge.builder("app.db.semaphore.waiting", bounded, BoundedDataSource::getQueueLength)
+                    .register(registry);
+        };
+    }
+}
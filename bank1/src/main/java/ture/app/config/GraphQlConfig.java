@@ -0,0 +1,41 @@
+package ture.app.config;
+
+import graphql.analysis.FieldComplexityCalculator;
+import graphql.analysis.MaxQueryComplexityInstrumentation;
+import graphql.analysis.MaxQueryDepthInstrumentation;
+import graphql.schema.GraphQLTypeUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Ограничения запросов GraphQL (проверяются до выполнения, запрос сверх лимита отклоняется целиком):
+// - глубина вложенности (app.graphql.max-depth)
+// - сложность: поле стоит 1, поле-список умножает стоимость вложенных полей на число элементов -
+//   аргумент first/last (значения по умолчанию заданы в схеме) или app.graphql.list-size
+//   для списков без аргумента (счета пользователя)
+@Configuration
+public class GraphQlConfig {
+
+    @Bean
+    public MaxQueryDepthInstrumentation maxQueryDepthInstrumentation(
+            @Value("${app.graphql.max-depth:8}") int maxDepth) {
+        return new MaxQueryDepthInstrumentation(maxDepth);
+    }
+
+    @Bean
+    public MaxQueryComplexityInstrumentation maxQueryComplexityInstrumentation(
+            @Value("${app.graphql.max-complexity:10000}") int maxComplexity,
+            @Value("${app.graphql.list-size:10}") int listSize) {
+        FieldComplexityCalculator calculator = (env, childComplexity) -> {
+            if(!GraphQLTypeUtil.isList(GraphQLTypeUtil.unwrapNonNull(env.getFieldDefinition().getType())))
+                return 1 + childComplexity;
+            var size = listSize;
+            for (var name : new String[]{"first", "last"}) {
+                if(env.getArguments().get(name) instanceof Integer value && value > 0)
+                    size = value;
+            }
+            return 1 + size * childComplexity;
+        };
+        return new MaxQueryComplexityInstrumentation(maxComplexity, calculator);
+    }
+}
@@ -0,0 +1,94 @@
+package ture.app.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Создаем класс ReadReplica - пул соединений реплики и проверка её отставания.
+// Для чего это нужно:
+// - Read-only транзакции уходят на реплику, пока она доступна и отстаёт не больше max-lag-ms
+// - Отставание проверяется по расписанию: если реплика догнала полученный WAL - 0,
+//   иначе время с последней применённой транзакции (простой основной СУБД не считается отставанием)
+// - Ошибка соединения с репликой переводит чтение на основную СУБД до следующей успешной проверки
+public class ReadReplica implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ReadReplica.class);
+
+    private static final String LAG_SQL = """
+            SELECT CASE
+                     WHEN NOT pg_is_in_recovery() THEN 0
+                     WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                     ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0)
+                   END::bigint
+            """;
+
+    private final HikariDataSource pool;
+    private final DataSource dataSource;
+    private final long maxLagMs;
+
+    private volatile boolean available;
+    private volatile long lagMs = -1;
+
+    // куда ушли соединения read-only транзакций (метрика app.db.replica.routed)
+    final LongAdder toReplica = new LongAdder();
+    final LongAdder toPrimaryUnusable = new LongAdder();
+    final LongAdder toPrimaryPinned = new LongAdder();
+    final LongAdder toPrimaryError = new LongAdder();
+
+    // dataSource - пул реплики, возможно за семафором (BoundedDataSource)
+    public ReadReplica(HikariDataSource pool, DataSource dataSource, long maxLagMs) {
+        this.pool = pool;
+        this.dataSource = dataSource;
+        this.maxLagMs = maxLagMs;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    // реплика доступна и отстаёт не больше допустимого
+    public boolean isUsable() {
+        return available && lagMs <= maxLagMs;
+    }
+
+    // отставание в мс (-1 - реплика недоступна)
+    public long getLagMs() {
+        return available ? lagMs : -1;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    // ошибка соединения: чтение - с основной СУБД до следующей проверки
+    void failed(SQLException e) {
+        if(available)
+            logger.warn("Read replica is unavailable, reading from primary: {}", e.getMessage());
+        available = false;
+    }
+
+    @Scheduled(fixedDelayString = "${app.db.replica.check-ms:1000}")
+    public void check() {
+        try (var connection = dataSource.getConnection();
+             var statement = connection.createStatement();
+             var rs = statement.executeQuery(LAG_SQL)) {
+            rs.next();
+            var lag = rs.getLong(1);
+            if(!available || (lag > maxLagMs) != (lagMs > maxLagMs))
+                logger.info("Read replica lag is {} ms (max {} ms)", lag, maxLagMs);
+            lagMs = lag;
+            available = true;
+        } catch (SQLException e) {
+            failed(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
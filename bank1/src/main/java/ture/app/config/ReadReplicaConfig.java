@@ -0,0 +1,86 @@
+package ture.app.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.LongAdder;
+
+// Чтение с реплики (app.db.replica.enabled): read-only транзакции идут в отдельный пул реплики,
+// переводы и прочая запись - в основную СУБД. Основной DataSource остаётся автоконфигурируемым
+// (его же использует Flyway) и оборачивается после создания, как и в DataSourceLimitConfig.
+// Hibernate должен отдавать соединение после каждой транзакции (профиль replica): иначе
+// EntityManager запроса (open-in-view) держит соединение первой транзакции, в том числе реплики.
+@Configuration
+@ConditionalOnProperty(name = "app.db.replica.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Bean(destroyMethod = "close")
+    public ReadReplica readReplica(Environment environment) {
+        var pool = new HikariDataSource();
+        pool.setPoolName("replica");
+        pool.setJdbcUrl(environment.getRequiredProperty("app.db.replica.url"));
+        pool.setUsername(environment.getProperty("app.db.replica.username",
+                environment.getProperty("spring.datasource.username")));
+        pool.setPassword(environment.getProperty("app.db.replica.password",
+                environment.getProperty("spring.datasource.password")));
+        pool.setMaximumPoolSize(environment.getProperty("app.db.replica.maximum-pool-size", Integer.class, 10));
+        pool.setMinimumIdle(environment.getProperty("app.db.replica.minimum-idle", Integer.class, 2));
+        pool.setReadOnly(true);
+
+        // очередь к пулу реплики - на своём семафоре, как и у основного пула
+        DataSource dataSource = pool;
+        if(environment.getProperty("app.db.semaphore.enabled", Boolean.class, false))
+            dataSource = new BoundedDataSource(pool, pool.getMaximumPoolSize(),
+                    environment.getProperty("app.db.semaphore.timeout-ms", Long.class, 30000L));
+        return new ReadReplica(pool, dataSource,
+                environment.getProperty("app.db.replica.max-lag-ms", Long.class, 1000L));
+    }
+
+    // без Ordered - после семафора (DataSourceLimitConfig): соединение берётся лениво, при первом запросе
+    @Bean
+    public static BeanPostProcessor replicaRoutingPostProcessor(ObjectProvider<ReadReplica> readReplica) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if(!"dataSource".equals(beanName) || !(bean instanceof DataSource primary))
+                    return bean;
+                return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, readReplica.getObject()));
+            }
+        };
+    }
+
+    // отставание, доступность реплики и выбор СУБД для read-only транзакций
+    @Bean
+    public MeterBinder readReplicaMetrics(ReadReplica replica) {
+        return registry -> {
+            Gauge.builder("app.db.replica.lag", replica, ReadReplica::getLagMs)
+                    .description("Отставание реплики, мс (-1 - недоступна)")
+                    .baseUnit("milliseconds")
+                    .register(registry);
+            Gauge.builder("app.db.replica.available", replica, r -> r.isAvailable() ? 1 : 0)
+                    .register(registry);
+            routed(registry, replica.toReplica, "replica", "none");
+            routed(registry, replica.toPrimaryPinned, "primary", "read_your_writes");
+            routed(registry, replica.toPrimaryUnusable, "primary", "lag");
+            routed(registry, replica.toPrimaryError, "primary", "error");
+        };
+    }
+
+    private static void routed(MeterRegistry registry, LongAdder adder, String target, String reason) {
+        FunctionCounter.builder("app.db.replica.routed", adder, LongAdder::sum)
+                .description("Соединения read-only транзакций по СУБД")
+                .tags("target", target, "reason", reason)
+                .register(registry);
+    }
+}
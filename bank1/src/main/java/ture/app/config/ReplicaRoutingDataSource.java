@@ -0,0 +1,50 @@
+package ture.app.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ture.app.cache.RecentWrites;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Создаем класс ReplicaRoutingDataSource - выбор СУБД для соединения.
+// Для чего это нужно:
+// - Соединение read-only транзакции (@Transactional(readOnly = true), TransactionTemplate.setReadOnly)
+//   берётся из пула реплики, всё остальное - из основной СУБД
+// - В основную СУБД идут и read-only транзакции, если реплика отстаёт или недоступна,
+//   и чтение недавно изменённых данных (RecentWrites.onPrimary)
+// Признак read-only выставляется после начала транзакции, поэтому класс работает только за
+// LazyConnectionDataSourceProxy: соединение берётся при первом запросе, когда признак уже известен.
+public class ReplicaRoutingDataSource extends DelegatingDataSource {
+    private final ReadReplica replica;
+
+    // primary - основная СУБД
+    public ReplicaRoutingDataSource(DataSource primary, ReadReplica replica) {
+        super(primary);
+        this.replica = replica;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if(!TransactionSynchronizationManager.isCurrentTransactionReadOnly())
+            return super.getConnection();
+        if(RecentWrites.isPinnedToPrimary()) {
+            replica.toPrimaryPinned.increment();
+            return super.getConnection();
+        }
+        if(!replica.isUsable()) {
+            replica.toPrimaryUnusable.increment();
+            return super.getConnection();
+        }
+        try {
+            var connection = replica.getDataSource().getConnection();
+            replica.toReplica.increment();
+            return connection;
+        } catch (SQLException e) {
+            replica.failed(e);
+            replica.toPrimaryError.increment();
+            return super.getConnection();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package ture.app.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Включаем выполнение периодических задач (@Scheduled)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,12 @@
+package ture.app.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+// Порядок аспекта транзакций: выше, чем у LockAspect (блокировки - внутри транзакции),
+// и ниже, чем у LocalLockAspect (ожидание в JVM - до начала транзакции)
+@Configuration
+@EnableTransactionManagement(proxyTargetClass = true, order = Ordered.LOWEST_PRECEDENCE - 100)
+public class TransactionConfig {
+}
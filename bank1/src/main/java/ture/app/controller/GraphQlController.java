@@ -0,0 +1,159 @@
+package ture.app.controller;
+
+import graphql.schema.DataFetchingEnvironment;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.BatchMapping;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.graphql.data.method.annotation.SchemaMapping;
+import org.springframework.graphql.execution.BatchLoaderRegistry;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+import ture.app.money.Money;
+import ture.app.native_sql.StatementSql;
+import ture.app.native_sql.UsersSql;
+import ture.app.service.UserLoaders;
+import ture.app.service.UserService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+//  GraphQL API (схема - resources/graphql/schema.graphqls) доступен по адресу:
+//  http://localhost:8080/graphql
+//
+//  Вложенные поля (user -> accounts -> recentTransactions -> from/to -> ...) загружаются пакетами:
+//  graphql-java собирает объекты одного уровня и вызывает загрузчик один раз на поле,
+//  поэтому число sql-запросов зависит от глубины запроса, а не от числа объектов в ответе
+@Controller
+public class GraphQlController {
+    // загрузчик последних операций счёта (у поля есть аргумент, поэтому DataLoader вместо @BatchMapping)
+    private static final String RECENT_TRANSACTIONS = "account.recentTransactions";
+
+    public static final int DEFAULT_TRANSACTIONS = 10;
+    public static final int MAX_TRANSACTIONS = 100;
+
+    @Autowired
+    private UsersSql usersSql;
+
+    @Autowired
+    private StatementSql statementSql;
+
+    @Autowired
+    private UserLoaders userLoaders;
+
+    @Autowired
+    private BatchLoaderRegistry batchLoaderRegistry;
+
+    // последние операции счёта с числом строк
+    private record RecentKey(Long accountId, int limit) {}
+
+    @PostConstruct
+    public void registerLoaders() {
+        batchLoaderRegistry.<RecentKey, List<StatementSql.Line>>forName(RECENT_TRANSACTIONS)
+                .registerMappedBatchLoader((keys, env) -> Mono.fromCallable(() -> loadRecent(keys)));
+    }
+
+    // одиночный запрос объединяется с параллельными (в том числе gRPC GetUser) в пакетный
+    @QueryMapping
+    public CompletableFuture<UsersSql.UserRow> user(@Argument Long id) {
+        return userLoaders.user(id);
+    }
+
+    @QueryMapping
+    public List<UsersSql.UserRow> users(@Argument Long after, @Argument Integer first) {
+        var size = first == null || first <= 0 ? UserService.DEFAULT_PAGE_SIZE : Math.min(first, UserService.MAX_PAGE_SIZE);
+        return usersSql.findUsersPage(after == null ? 0L : after, size);
+    }
+
+    @QueryMapping
+    public UsersSql.AccountRow account(@Argument Long id) {
+        return usersSql.findAccountsByIds(List.of(id)).stream().findFirst().orElse(null);
+    }
+
+    // счета всех пользователей уровня - одним запросом
+    @BatchMapping(typeName = "User")
+    public Map<UsersSql.UserRow, List<UsersSql.AccountRow>> accounts(List<UsersSql.UserRow> users) {
+        var byUser = new HashMap<Long, List<UsersSql.AccountRow>>();
+        for (var account : usersSql.findAccounts(users.stream().map(UsersSql.UserRow::id).distinct().toList()))
+            byUser.computeIfAbsent(account.userId(), id -> new ArrayList<>()).add(account);
+        var result = new LinkedHashMap<UsersSql.UserRow, List<UsersSql.AccountRow>>();
+        for (var user : users)
+            result.put(user, byUser.getOrDefault(user.id(), List.of()));
+        return result;
+    }
+
+    // владельцы всех счетов уровня - одним запросом
+    @BatchMapping(typeName = "Account", field = "user")
+    public Map<UsersSql.AccountRow, UsersSql.UserRow> accountUser(List<UsersSql.AccountRow> accounts) {
+        var users = new HashMap<Long, UsersSql.UserRow>();
+        for (var user : usersSql.findUsers(accounts.stream().map(UsersSql.AccountRow::userId).distinct().toList()))
+            users.put(user.id(), user);
+        var result = new LinkedHashMap<UsersSql.AccountRow, UsersSql.UserRow>();
+        for (var account : accounts)
+            result.put(account, users.get(account.userId()));
+        return result;
+    }
+
+    @SchemaMapping(typeName = "Account", field = "amount")
+    public String accountAmount(UsersSql.AccountRow account) {
+        return Money.format(account.amount());
+    }
+
+    @SchemaMapping(typeName = "Account")
+    public CompletableFuture<List<StatementSql.Line>> recentTransactions(UsersSql.AccountRow account,
+                                                                         @Argument Integer last,
+                                                                         DataFetchingEnvironment env) {
+        var limit = last == null || last <= 0 ? DEFAULT_TRANSACTIONS : Math.min(last, MAX_TRANSACTIONS);
+        return env.<RecentKey, List<StatementSql.Line>>getDataLoader(RECENT_TRANSACTIONS)
+                .load(new RecentKey(account.id(), limit));
+    }
+
+    @SchemaMapping(typeName = "Transaction", field = "amount")
+    public String transactionAmount(StatementSql.Line line) {
+        return Money.format(line.amount());
+    }
+
+    // счета списания и зачисления всех операций уровня - по запросу на поле
+    @BatchMapping(typeName = "Transaction")
+    public Map<StatementSql.Line, UsersSql.AccountRow> from(List<StatementSql.Line> lines) {
+        return accountsOf(lines, StatementSql.Line::fromAccID);
+    }
+
+    @BatchMapping(typeName = "Transaction")
+    public Map<StatementSql.Line, UsersSql.AccountRow> to(List<StatementSql.Line> lines) {
+        return accountsOf(lines, StatementSql.Line::toAccID);
+    }
+
+    private Map<StatementSql.Line, UsersSql.AccountRow> accountsOf(List<StatementSql.Line> lines,
+                                                                  Function<StatementSql.Line, Long> accountId) {
+        var accounts = new HashMap<Long, UsersSql.AccountRow>();
+        for (var account : usersSql.findAccountsByIds(lines.stream().map(accountId).distinct().toList()))
+            accounts.put(account.id(), account);
+        var result = new LinkedHashMap<StatementSql.Line, UsersSql.AccountRow>();
+        for (var line : lines)
+            result.put(line, accounts.get(accountId.apply(line)));
+        return result;
+    }
+
+    // один запрос на каждое различное число строк (обычно - одно на уровень)
+    private Map<RecentKey, List<StatementSql.Line>> loadRecent(Set<RecentKey> keys) {
+        var byLimit = new HashMap<Integer, HashSet<Long>>();
+        for (var key : keys)
+            byLimit.computeIfAbsent(key.limit(), limit -> new HashSet<>()).add(key.accountId());
+        var result = new HashMap<RecentKey, List<StatementSql.Line>>();
+        byLimit.forEach((limit, accountIds) -> {
+            var recent = statementSql.recent(accountIds, limit);
+            for (var accountId : accountIds)
+                result.put(new RecentKey(accountId, limit), recent.getOrDefault(accountId, List.of()));
+        });
+        return result;
+    }
+}
@@ -7,9 +7,13 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -18,11 +22,21 @@ import ture.app.dto.AccountDTO;
 import ture.app.dto.TransactionDTO;
 import ture.app.dto.UserDTO;
 import ture.app.entity.Account;
+import ture.app.entity.Transaction;
+import ture.app.money.Money;
+import ture.app.native_sql.UsersSql;
 import ture.app.service.AccountService;
+import ture.app.service.AdmissionRejectedException;
+import ture.app.service.PaymentAdmission;
+import ture.app.service.PaymentInProgressException;
+import ture.app.service.PaymentJournal;
+import ture.app.service.PaymentKeys;
 import ture.app.service.TransactionService;
+import ture.app.service.TransferCommand;
+import ture.app.service.TransferOutcome;
 import ture.app.service.UserService;
 
-import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
 
 //  Swagger UI (интерактивный интерфейс) будет доступен по адресу:
 //  http://localhost:8080/swagger-ui.html
@@ -42,26 +56,18 @@ public class PaymentsController {
     @Autowired
     private TransactionService transactionService;
 
-    /**
-     * Конвертирует строковую сумму в целое число (копейки/центы)
-     * @param amount Строковое представление суммы
-     * @return Сумма в минимальных единицах (копейках/центах)
-     * curl -X 'POST' 'http://localhost:8080/api/payments' -H 'accept: application/json' -H 'Content-Type: application/json' -d '{"from_acc": {"id": 2},"to_acc": {"id": 1},"amount": "1.00"}'
-     **/
-    @Operation(summary = "Конвертация суммы",
-            description = "Преобразует строковую сумму с плавающей точкой в целое число (копейки)",
-            hidden = true) // Скрываем этот метод из документации API, так как он внутренний
-    public Integer convertToInteger(String amount) {
-        // Убираем возможные пробелы
-        String cleaned = amount.trim();
-
-        // Преобразуем в BigDecimal для точности
-        BigDecimal decimal = new java.math.BigDecimal(cleaned);
-
-        // Умножаем на 100 и преобразуем в Integer
-        return decimal.multiply(new java.math.BigDecimal("100")).intValue();
-    }
+    @Autowired
+    private PaymentJournal paymentJournal;
+
+    @Autowired
+    private PaymentKeys paymentKeys;
+
+    @Autowired
+    private PaymentAdmission paymentAdmission;
 
+    // Сумма передаётся строкой "123.45" и разбирается в копейки (Money.parse)
+    // idempotencyKey (необязательно) - повтор с тем же ключом вернёт исходную операцию без повторного перевода
+    // curl -X 'POST' 'http://localhost:8080/api/payments' -H 'accept: application/json' -H 'Content-Type: application/json' -d '{"from_acc": {"id": 2},"to_acc": {"id": 1},"amount": "1.00"}'
     @PostMapping
     @Operation(summary = "Создание платежа/перевода",
             description = "Выполняет перевод средств между счетами")
@@ -74,28 +80,141 @@ public class PaymentsController {
                     description = "Неверный запрос или недостаточно средств"),
             @ApiResponse(responseCode = "404",
                     description = "Один из счетов не найден"),
+            @ApiResponse(responseCode = "409",
+                    description = "Платёж с этим ключом идемпотентности выполняется другим запросом, повторить позже"),
+            @ApiResponse(responseCode = "429",
+                    description = "Слишком много одновременных платежей по счёту, повторить через Retry-After секунд"),
             @ApiResponse(responseCode = "500",
                     description = "Внутренняя ошибка сервера")
     })
-    public ResponseEntity<TransactionDTO> payment(
+    public CompletableFuture<ResponseEntity<TransactionDTO>> payment(
             @Parameter(description = "Данные для выполнения перевода",
                     required = true,
                     schema = @Schema(implementation = TransactionDTO.class))
             @RequestBody TransactionDTO transactionDTO) {
 
+        // групповая фиксация: ответ придёт после commit пачки, счета заранее не читаем
+        if(paymentJournal.isEnabled())
+            return journalPayment(transactionDTO);
+
+        // сведения о счетах - из кэша: заведомо невозможный перевод отклоняется без обращения к СУБД,
+        // остальные проверки перевод повторяет под блокировкой (отказные сведения живут секунды - reject-ttl-ms)
+        var from_acc = accountService.getMeta(transactionDTO.getFrom_acc().getId()).orElse(null);
+        var to_acc = accountService.getMeta(transactionDTO.getTo_acc().getId()).orElse(null);
+        if(from_acc == null)
+            throw new RuntimeException("From Account cannot be null");
+        if(to_acc == null)
+            throw new RuntimeException("To Account cannot be null");
+        if(from_acc.isBlocked())
+            throw new RuntimeException("From Account is blocked");
+        if(from_acc.isClosed())
+            throw new RuntimeException("From Account is closed");
+        if(to_acc.isClosed())
+            throw new RuntimeException("To Account is closed");
+
+        var amount = Money.parse(transactionDTO.getAmount());
 
-        AccountDTO from_acc_ = transactionDTO.getFrom_acc();
-        Account from_acc = accountService.getById(from_acc_.getId()).orElse(null);
+        // предел одновременных платежей по счетам: сверх него - сразу 429, а не ожидание блокировки счёта
+        PaymentAdmission.Permit permit;
+        try {
+            permit = paymentAdmission.acquire(from_acc.id(), to_acc.id());
+        } catch (AdmissionRejectedException e) {
+            return CompletableFuture.completedFuture(tooManyRequests(e));
+        }
 
-        AccountDTO to_acc_ = transactionDTO.getTo_acc();
-        Account to_acc = accountService.getById(to_acc_.getId()).orElse(null);
+        var key = transactionDTO.getIdempotencyKey();
+        var command = new TransferCommand(from_acc.id(), to_acc.id(), amount, key);
+        Transaction tran;
+        try (permit) {
+            var previous = paymentKeys.claim(key, command);
+            if(previous.isPresent())
+                return CompletableFuture.completedFuture(ResponseEntity.ok(toTransactionDTO(command, previous.get())));
 
-        var amount = convertToInteger(transactionDTO.getAmount());
+            try {
+                tran = transactionService.create(from_acc.id(), to_acc.id(), amount, key);
+            } catch (PaymentInProgressException e) {
+                // ключ занял заново другой запрос (аренда истекла) - освобождать его нельзя
+                throw e;
+            } catch (RuntimeException e) {
+                paymentKeys.release(key);
+                throw e;
+            }
+        }
 
-        var tran = transactionService.create(from_acc, to_acc, amount);
-        var tranDTO = new TransactionDTO(tran);
+        var tranDTO = new TransactionDTO(tran.getId(),
+                                         tran.getCreatedAt(),
+                                         toAccountDTO(from_acc, tran.getFromAccount()),
+                                         toAccountDTO(to_acc, null),
+                                         tran.getAmount());
         tranDTO.getTo_acc().Clear();
-        return ResponseEntity.ok(tranDTO);
+        return CompletableFuture.completedFuture(ResponseEntity.ok(tranDTO));
+
+    }
+
+    // счёт в ответе: остаток из перевода, если счёт загружен, иначе из кэша остатков
+    // (account == null - остаток не нужен)
+    private AccountDTO toAccountDTO(UsersSql.AccountMeta meta, Account account) {
+        var dto = new AccountDTO(meta.id());
+        dto.setName(meta.name());
+        dto.setUserId(meta.userId());
+        dto.setCreatedAt(meta.createdAt());
+        dto.setBlockedAt(meta.blockedAt());
+        dto.setClosedAt(meta.closedAt());
+        if(account == null)
+            return dto;
+        if(Hibernate.isInitialized(account))
+            dto.setAmount(Money.format(account.getAmount()));
+        else
+            dto.setAmount(accountService.getAmount(meta.id()));
+        return dto;
+    }
+
+    private CompletableFuture<ResponseEntity<TransactionDTO>> journalPayment(TransactionDTO transactionDTO) {
+        var fromAccID = transactionDTO.getFrom_acc().getId();
+        var toAccID = transactionDTO.getTo_acc().getId();
+        var amount = Money.parse(transactionDTO.getAmount());
+
+        var key = transactionDTO.getIdempotencyKey();
+        var command = new TransferCommand(fromAccID, toAccID, amount, key);
+        var previous = paymentKeys.claim(key, command);
+        if(previous.isPresent())
+            return CompletableFuture.completedFuture(ResponseEntity.ok(toTransactionDTO(command, previous.get())));
+
+        // результат по ключу пишется в транзакции пачки.
+        // Ошибка передаётся тем же RuntimeException, что бросает синхронный путь, без обёртки CompletionException
+        // (исключение внутри thenApply было бы обёрнуто) - клиент получает одинаковый ответ в обоих режимах
+        var response = new CompletableFuture<ResponseEntity<TransactionDTO>>();
+        paymentJournal.submit(command).whenComplete((outcome, e) -> {
+            if(e != null)
+                response.completeExceptionally(e);
+            else if(!outcome.isCompleted())
+                response.completeExceptionally(new RuntimeException(outcome.errorMessage()));
+            else
+                response.complete(ResponseEntity.ok(toTransactionDTO(command, outcome)));
+        });
+        return response;
+    }
+
+    // ключ идемпотентности занят другим запросом: повтор получит исходный результат
+    // (в том числе из асинхронного ответа групповой фиксации)
+    @ExceptionHandler(PaymentInProgressException.class)
+    public ResponseEntity<String> paymentInProgress(PaymentInProgressException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    // отказ по пределу платежей: клиент может повторить запрос через Retry-After секунд
+    private static <T> ResponseEntity<T> tooManyRequests(AdmissionRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
+    }
 
+    // операция без остатков счетов (групповая фиксация или повтор по ключу идемпотентности)
+    private static TransactionDTO toTransactionDTO(TransferCommand command, TransferOutcome outcome) {
+        return new TransactionDTO(outcome.id(),
+                                  outcome.createdAt(),
+                                  new AccountDTO(command.fromAccID()),
+                                  new AccountDTO(command.toAccID()),
+                                  command.amount());
     }
 }
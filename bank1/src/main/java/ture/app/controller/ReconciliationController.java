@@ -0,0 +1,59 @@
+package ture.app.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ture.app.service.ReconciliationService;
+
+@RestController
+@RequestMapping("/api/reconciliation")
+@Tag(name = "Сверка", description = "Сверка остатков счетов с журналом операций")
+public class ReconciliationController {
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    // Сверка выполняется в фоне, ход и результат - GET /api/reconciliation
+    // curl -X 'POST' 'http://localhost:8080/api/reconciliation' -H 'accept: application/json'
+    @PostMapping
+    @Operation(summary = "Запуск сверки",
+            description = "Запускает параллельную сверку остатков всех счетов с суммой операций")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202",
+                    description = "Сверка запущена",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ReconciliationService.Report.class))),
+            @ApiResponse(responseCode = "500",
+                    description = "Сверка уже выполняется или внутренняя ошибка сервера")
+    })
+    public ResponseEntity<ReconciliationService.Report> start() {
+        return ResponseEntity.accepted().body(reconciliationService.start());
+    }
+
+    // curl -X 'GET' 'http://localhost:8080/api/reconciliation' -H 'accept: application/json'
+    @GetMapping
+    @Operation(summary = "Результат сверки",
+            description = "Возвращает отчёт последней (или выполняющейся) сверки")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200",
+                    description = "Отчёт найден",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ReconciliationService.Report.class))),
+            @ApiResponse(responseCode = "404",
+                    description = "Сверка ещё не выполнялась")
+    })
+    public ResponseEntity<ReconciliationService.Report> last() {
+        var report = reconciliationService.getLastReport();
+        if(report == null)
+            return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(report);
+    }
+}
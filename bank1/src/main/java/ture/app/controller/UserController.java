@@ -7,18 +7,28 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ture.app.dto.AccountDTO;
+import ture.app.dto.StatementDTO;
+import ture.app.dto.TransactionDTO;
 import ture.app.dto.UserDTO;
+import ture.app.dto.UsersPageDTO;
 import ture.app.entity.User;
 import ture.app.service.AccountService;
+import ture.app.service.StatementService;
 import ture.app.service.UserService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 // Создаем класс UserController с методами для обработки HTTP запросов.
 // Для чего это нужно:
@@ -41,23 +51,40 @@ public class UserController {
     @Autowired
     private AccountService accountService;
 
-    // GET /api/users - получить всех пользователей
-    // curl http://127.0.0.1:8080/api/users
+    @Autowired
+    private StatementService statementService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // GET /api/users - получить пользователей постранично
+    // curl "http://127.0.0.1:8080/api/users?limit=100"
+    // curl "http://127.0.0.1:8080/api/users?after=100&limit=100&includeAccounts=false"
     @Operation(
-            summary = "Получить всех пользователей",
-            description = "Возвращает список всех зарегистрированных пользователей системы."
+            summary = "Получить пользователей",
+            description = "Возвращает страницу зарегистрированных пользователей в порядке возрастания ID. " +
+                    "Следующая страница запрашивается с after = next из предыдущего ответа."
     )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
                     description = "Успешный запрос",
                     content = @Content(mediaType = "application/json",
-                            schema = @Schema(implementation = UserDTO.class))
+                            schema = @Schema(implementation = UsersPageDTO.class))
             )
     })
     @GetMapping
-    public List<UserDTO> getAllUsers() {
-        return userService.getAllUsers().stream().map(UserDTO::new).collect(Collectors.toList());
+    public UsersPageDTO getAllUsers(
+            @Parameter(description = "ID последнего пользователя предыдущей страницы", example = "100")
+            @RequestParam(value = "after", required = false) Long after,
+
+            @Parameter(description = "Размер страницы (не более 1000)", example = "100")
+            @RequestParam(value = "limit", required = false) Integer limit,
+
+            @Parameter(description = "Вернуть счета пользователей", example = "true")
+            @RequestParam(value = "includeAccounts", defaultValue = "true") boolean includeAccounts
+    ) {
+        return userService.getUsersPage(after, limit, includeAccounts);
     }
 
     // GET /api/users/{id} - получить пользователя по ID
@@ -85,7 +112,7 @@ public class UserController {
             @PathVariable Long id
     ) {
         Optional<User> user = userService.getUserById(id);
-        return user.map(UserDTO::new)
+        return user.map(userService::toDTO)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -115,7 +142,7 @@ public class UserController {
             @PathVariable String name
     ) {
         Optional<User> user = userService.getUserByName(name);
-        return user.map(UserDTO::new)
+        return user.map(userService::toDTO)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -145,7 +172,7 @@ public class UserController {
             @PathVariable String email
     ) {
         Optional<User> user = userService.getUserByEmail(email);
-        return user.map(UserDTO::new)
+        return user.map(userService::toDTO)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -241,7 +268,7 @@ public class UserController {
         if (!user.getName().isEmpty()) {
             var u = userService.updateUser(id, user.getName());
             if (u != null) {
-                return ResponseEntity.ok(new UserDTO(u));
+                return ResponseEntity.ok(userService.toDTO(u));
             }
         }
         return ResponseEntity.notFound().build();
@@ -295,7 +322,7 @@ public class UserController {
         if (!user.getEmail().isEmpty()) {
             var u = userService.updateUser(id, user.getEmail());
             if (u != null) {
-                return ResponseEntity.ok(new UserDTO(u));
+                return ResponseEntity.ok(userService.toDTO(u));
             }
         }
         return ResponseEntity.notFound().build();
@@ -349,12 +376,9 @@ public class UserController {
             @Parameter(description = "ID пользователя", required = true, example = "1")
             @PathVariable Long id
     ) {
-        var accounts = userService.getAccounts(id);
-        var list = accounts.values()
-                .stream()
-                .map(AccountDTO::new)
-                .toList();
-        return ResponseEntity.ok(list);
+        return userService.getAccounts(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     // PUT /api/users/{id}/accounts/{id_acc}/name
@@ -402,6 +426,162 @@ public class UserController {
         return ResponseEntity.ok(res);
     }
 
+    // PUT /api/users/{id}/accounts/{id_acc}/buckets
+    // curl -X PUT http://127.0.0.1:8080/api/users/1/accounts/1/buckets -H "Content-Type: application/json" -d 16
+    @Operation(
+            summary = "Назначить счёт горячим",
+            description = "Делит остаток счета на указанное число корзин: зачисления распределяются по корзинам " +
+                    "и не блокируют друг друга. 0 - обычный счёт"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Число корзин успешно изменено"
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Некорректное число корзин"
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Пользователь или счет не найден"
+            )
+    })
+    @PutMapping("/{id}/accounts/{id_acc}/buckets")
+    public ResponseEntity<Boolean> setAccountBuckets(
+            @Parameter(description = "ID пользователя", required = true, example = "1")
+            @PathVariable("id") Long id,
+
+            @Parameter(description = "ID счета", required = true, example = "1")
+            @PathVariable("id_acc") Long id_acc,
+
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Число корзин",
+                    required = true,
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(
+                                    description = "Число корзин остатка",
+                                    example = "16"
+                            )
+                    )
+            )
+            @RequestBody Integer buckets
+    ) {
+        var res = accountService.setBuckets(id, id_acc, buckets);
+        return ResponseEntity.ok(res);
+    }
+
+    // GET /api/users/{id}/accounts/{id_acc}/statement
+    // curl "http://127.0.0.1:8080/api/users/1/accounts/1/statement?limit=50"
+    // curl "http://127.0.0.1:8080/api/users/1/accounts/1/statement?limit=50&cursor=2025-12-07T08:08:20.976_123"
+    @Operation(
+            summary = "Выписка по счёту",
+            description = "Возвращает страницу операций счета от новых к старым. " +
+                    "Следующая страница запрашивается с курсором next из предыдущего ответа"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Страница выписки",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = StatementDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Некорректный курсор или период"
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Пользователь или счет не найден"
+            )
+    })
+    @GetMapping("/{id}/accounts/{id_acc}/statement")
+    public ResponseEntity<StatementDTO> getAccountStatement(
+            @Parameter(description = "ID пользователя", required = true, example = "1")
+            @PathVariable("id") Long id,
+
+            @Parameter(description = "ID счета", required = true, example = "1")
+            @PathVariable("id_acc") Long id_acc,
+
+            @Parameter(description = "Начало периода (включительно)", example = "2025-12-01T00:00:00")
+            @RequestParam(value = "since", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+
+            @Parameter(description = "Конец периода (не включительно)", example = "2026-01-01T00:00:00")
+            @RequestParam(value = "until", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime until,
+
+            @Parameter(description = "Курсор продолжения из предыдущей страницы")
+            @RequestParam(value = "cursor", required = false) String cursor,
+
+            @Parameter(description = "Размер страницы (не более 1000)", example = "100")
+            @RequestParam(value = "limit", required = false) Integer limit
+    ) {
+        accountService.checkOwner(id, id_acc);
+        var page = statementService.getPage(id_acc, since, until, cursor, limit);
+        var list = page.lines()
+                .stream()
+                .map(TransactionDTO::new)
+                .toList();
+        return ResponseEntity.ok(new StatementDTO(id_acc, list, page.next()));
+    }
+
+    // GET /api/users/{id}/accounts/{id_acc}/statement/export
+    // curl http://127.0.0.1:8080/api/users/1/accounts/1/statement/export
+    @Operation(
+            summary = "Выгрузка выписки по счёту",
+            description = "Отдаёт все операции счета за период потоком, по одной JSON-строке на операцию (NDJSON)"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Поток операций",
+                    content = @Content(mediaType = "application/x-ndjson",
+                            schema = @Schema(implementation = TransactionDTO.class))
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "Пользователь или счет не найден"
+            )
+    })
+    @GetMapping(value = "/{id}/accounts/{id_acc}/statement/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportAccountStatement(
+            @Parameter(description = "ID пользователя", required = true, example = "1")
+            @PathVariable("id") Long id,
+
+            @Parameter(description = "ID счета", required = true, example = "1")
+            @PathVariable("id_acc") Long id_acc,
+
+            @Parameter(description = "Начало периода (включительно)", example = "2025-12-01T00:00:00")
+            @RequestParam(value = "since", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+
+            @Parameter(description = "Конец периода (не включительно)", example = "2026-01-01T00:00:00")
+            @RequestParam(value = "until", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime until
+    ) {
+        accountService.checkOwner(id, id_acc);
+        StreamingResponseBody body = out -> {
+            var writer = objectMapper.writer();
+            try {
+                statementService.export(id_acc, since, until, line -> {
+                    try {
+                        out.write(writer.writeValueAsBytes(new TransactionDTO(line)));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
     // POST /api/users/{id}/accounts
     // curl -X POST http://localhost:8080/api/users/1/accounts -H "Content-Type: application/json" -d 'Брокерский счёт 1'
     @Operation(
@@ -3,6 +3,7 @@ package ture.app.dto;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import ture.app.entity.Account;
+import ture.app.money.Money;
 
 import java.time.LocalDateTime;
 
@@ -35,16 +36,20 @@ public class AccountDTO {
     private LocalDateTime closedAt;
 
     public AccountDTO() {}
+    // ссылка на счёт (только идентификатор)
+    public AccountDTO(Long id) {
+        this.id = id;
+    }
     public AccountDTO(Long id,
                       String name,
-                      Integer amount,
+                      Long amount,
                       Long userId,
                       LocalDateTime createdAt,
                       LocalDateTime blockedAt,
                       LocalDateTime closedAt) {
         this.id = id;
         this.name = name;
-        this.amount = String.format("%.2f", amount/100.0);
+        this.amount = Money.format(amount);
         this.userId = userId;
 
         this.createdAt = createdAt;
@@ -54,7 +59,7 @@ public class AccountDTO {
     public AccountDTO(Account account) {
         this.id = account.getId();
         this.name = account.getName();
-        this.amount = String.format("%.2f", account.getAmount()/100.0);
+        this.amount = Money.format(account.getAmount());
         this.userId = account.getUser().getId();
         this.createdAt = account.getCreatedAt();
         this.blockedAt = account.getBlockedAt();
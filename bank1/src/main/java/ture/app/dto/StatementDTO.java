@@ -0,0 +1,52 @@
+package ture.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StatementDTO {
+    @Schema(description = "Идентификатор счёта",
+            example = "1",
+            accessMode = Schema.AccessMode.READ_ONLY)
+    private Long accountId;
+    @Schema(description = "Операции, от новых к старым",
+            accessMode = Schema.AccessMode.READ_ONLY)
+    private List<TransactionDTO> transactions;
+    @Schema(description = "Курсор следующей страницы (нет - страниц больше нет)",
+            example = "2025-12-07T08:08:20.976_123",
+            accessMode = Schema.AccessMode.READ_ONLY)
+    private String next;
+
+    public StatementDTO() {}
+    public StatementDTO(Long accountId, List<TransactionDTO> transactions, String next) {
+        this.accountId = accountId;
+        this.transactions = transactions;
+        this.next = next;
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(Long accountId) {
+        this.accountId = accountId;
+    }
+
+    public List<TransactionDTO> getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(List<TransactionDTO> transactions) {
+        this.transactions = transactions;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
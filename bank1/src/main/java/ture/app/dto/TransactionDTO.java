@@ -4,6 +4,8 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.Pattern;
 import ture.app.entity.Transaction;
+import ture.app.money.Money;
+import ture.app.native_sql.StatementSql;
 
 import java.time.LocalDateTime;
 @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -27,24 +29,37 @@ public class TransactionDTO {
     @Pattern(regexp = "^\\d+\\.\\d{2}$", message = "Amount must be in format 123.45")
     private String amount;
 
+    @Schema(description = "Ключ идемпотентности: повтор платежа с тем же ключом вернёт исходный результат",
+            example = "6f1c2a9e-3b7d-4c1a-9e52-0d8f4b1a7c33",
+            accessMode = Schema.AccessMode.WRITE_ONLY)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String idempotencyKey;
+
     public TransactionDTO() {}
     public TransactionDTO(Long id,
                           LocalDateTime createdAt,
                           AccountDTO from_acc,
                           AccountDTO to_acc,
-                          Integer amount) {
+                          Long amount) {
         this.id = id;
         this.createdAt = createdAt;
         this.from_acc = from_acc;
         this.to_acc = to_acc;
-        this.amount = String.format("%.2f",amount/100.0);
+        this.amount = Money.format(amount);
     }
     public TransactionDTO(Transaction transaction) {
         this.id = transaction.getId();
         this.createdAt = transaction.getCreatedAt();
         this.from_acc = new AccountDTO(transaction.getFromAccount());
         this.to_acc = new AccountDTO(transaction.getToAccount());
-        this.amount = String.format("%.2f",transaction.getAmount()/100.0);
+        this.amount = Money.format(transaction.getAmount());
+    }
+    public TransactionDTO(StatementSql.Line line) {
+        this(line.id(),
+             line.createdAt(),
+             new AccountDTO(line.fromAccID()),
+             new AccountDTO(line.toAccID()),
+             line.amount());
     }
 
     public Long getId() {
@@ -86,4 +101,12 @@ public class TransactionDTO {
     public void setAmount(String amount) {
         this.amount = amount;
     }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
 }
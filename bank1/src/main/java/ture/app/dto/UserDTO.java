@@ -28,6 +28,13 @@ public class UserDTO {
         this.createdAt = createdAt;
         this.accounts = accounts;
     }
+    // проекция строки users (счета заполняются отдельно)
+    public UserDTO(Long id,
+                   String name,
+                   String email,
+                   LocalDateTime createdAt) {
+        this(id, name, email, createdAt, null);
+    }
     public UserDTO(User user) {
         this.id = user.getId();
         this.name = user.getName();
@@ -0,0 +1,39 @@
+package ture.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UsersPageDTO {
+    @Schema(description = "Пользователи в порядке возрастания ID",
+            accessMode = Schema.AccessMode.READ_ONLY)
+    private List<UserDTO> users;
+    @Schema(description = "ID для запроса следующей страницы (after), нет - страниц больше нет",
+            example = "100",
+            accessMode = Schema.AccessMode.READ_ONLY)
+    private Long next;
+
+    public UsersPageDTO() {}
+    public UsersPageDTO(List<UserDTO> users, Long next) {
+        this.users = users;
+        this.next = next;
+    }
+
+    public List<UserDTO> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserDTO> users) {
+        this.users = users;
+    }
+
+    public Long getNext() {
+        return next;
+    }
+
+    public void setNext(Long next) {
+        this.next = next;
+    }
+}
@@ -1,13 +1,22 @@
 package ture.app.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+import ture.app.cache.AccountCacheListener;
 
 import java.time.LocalDateTime;
 
 // Создаем Java-класс, который будет представлять таблицу "accounts" в базе данных.
 // Этот класс будет "отражением" таблицы в базе данных. Какое поле в классе - такой столбец в таблице.
 
+// @DynamicUpdate - в UPDATE попадают только изменённые поля (например, смена наименования
+// не перезаписывает остаток, изменённый переводом в обход JPA)
+// AccountCacheListener - сброс кэша счетов после commit изменений
+// Кэша второго уровня нет: остаток и версию переводы меняют sql-запросами в обход Hibernate (TransferSql,
+// BatchTransferSql, AccountBucketsSql, снимки LedgerSql), и кэш не узнаёт об этих изменениях даже на одном узле
 @Entity
+@DynamicUpdate
+@EntityListeners(AccountCacheListener.class)
 @Table(name = "accounts",
         uniqueConstraints = {
                 @UniqueConstraint(
@@ -15,7 +24,10 @@ import java.time.LocalDateTime;
                         columnNames = {"user_id", "name"}
                 )
         })
-public class Account {
+public class Account implements Lockable {
+    // номер класса в ключе advisory-блокировки
+    public static final int LOCK_CLASS_ID = 2;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -25,7 +37,12 @@ public class Account {
     private User user;
 
     @Column(name = "amount", nullable = false)
-    private Integer amount;
+    private Long amount;
+
+    // версия строки для оптимистичной блокировки (режим app.transfer.mode=optimistic)
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
 
     @Column(name = "name", nullable = false)
     private String name;
@@ -49,20 +66,28 @@ public class Account {
     public User getUser() {
         return user;
     }
+    @Override
     public Long getId() {
         return id;
     }
+    @Override
+    public int lockClassId() {
+        return LOCK_CLASS_ID;
+    }
 
     public Account() {}
     public Account(User user, String name) {
         this.user = user;
         this.name = name;
-        this.amount = 0;
+        this.amount = 0L;
     }
 
-    public Integer getAmount() {
+    public Long getAmount() {
         return amount;
     }
+    public Long getVersion() {
+        return version;
+    }
 
     public void setName(String name) {
         this.name = name;
@@ -89,9 +114,12 @@ public class Account {
         return closedAt;
     }
 
-    public void addAmount(Integer amount) {
+    public void addAmount(Long amount) {
         this.amount += amount;
     }
+    public void setAmount(Long amount) {
+        this.amount = amount;
+    }
 
     @Override
     public String toString() {
@@ -99,6 +127,7 @@ public class Account {
                 "id=" + id +
                 ", user=" + user +
                 ", amount=" + amount +
+                ", version=" + version +
                 ", name='" + name + '\'' +
                 ", createdAt=" + createdAt +
                 ", blockedAt=" + blockedAt +
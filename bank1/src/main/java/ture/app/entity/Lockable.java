@@ -0,0 +1,10 @@
+package ture.app.entity;
+
+// Сущность, которую можно заблокировать advisory-блокировкой СУБД.
+// Ключ блокировки - пара (номер класса, id), без рефлексии и формирования строк.
+public interface Lockable {
+    // номер класса в ключе блокировки (уникален среди блокируемых сущностей)
+    int lockClassId();
+
+    Long getId();
+}
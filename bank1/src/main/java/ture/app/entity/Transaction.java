@@ -10,10 +10,16 @@ import java.time.LocalDateTime;
 // Этот класс будет "отражением" таблицы в базе данных. Какое поле в классе - такой столбец в таблице.
 
 @Entity
+// Таблица секционирована по месяцам created_at (см. V6__Transactions_partitioned.sql)
 @Table(name = "transactions", indexes = {
-        @Index(name = "idx_transactions_created_at", columnList = "created_at")
+        @Index(name = "idx_transactions_created_at", columnList = "created_at"),
+        @Index(name = "idx_transactions_from_acc", columnList = "from_acc_id, created_at, id"),
+        @Index(name = "idx_transactions_to_acc", columnList = "to_acc_id, created_at, id")
 })
-public class Transaction {
+public class Transaction implements Lockable {
+    // номер класса в ключе advisory-блокировки
+    public static final int LOCK_CLASS_ID = 3;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -33,18 +39,23 @@ public class Transaction {
     private Account toAccount;
 
     @Column(name = "amount")
-    private Integer amount;
+    private Long amount;
 
     public Transaction() {}
-    public Transaction(Account fromAccount, Account toAccount, Integer amount) {
+    public Transaction(Account fromAccount, Account toAccount, Long amount) {
         this.fromAccount = fromAccount;
         this.toAccount = toAccount;
         this.amount = amount;
     }
 
+    @Override
     public Long getId() {
         return id;
     }
+    @Override
+    public int lockClassId() {
+        return LOCK_CLASS_ID;
+    }
 
     public void setId(Long id) {
         this.id = id;
@@ -74,11 +85,11 @@ public class Transaction {
         this.toAccount = toAccount;
     }
 
-    public Integer getAmount() {
+    public Long getAmount() {
         return amount;
     }
 
-    public void setAmount(Integer amount) {
+    public void setAmount(Long amount) {
         this.amount = amount;
     }
 }
@@ -1,6 +1,8 @@
 package ture.app.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -8,9 +10,16 @@ import java.util.Map;
 
 // Создаем Java-класс, который будет представлять таблицу "users" в базе данных.
 // Этот класс будет "отражением" таблицы в базе данных. Какое поле в классе - такой столбец в таблице.
+// Кэш второго уровня: пользователь меняется редко - NONSTRICT_READ_WRITE (запись сбрасывает элемент после commit).
+// Кэш локален для узла - изменение на другом узле видно по истечении срока региона users (секунды, application.conf)
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = "users")
 @Table(name = "users")
-public class User {
+public class User implements Lockable {
+    // номер класса в ключе advisory-блокировки
+    public static final int LOCK_CLASS_ID = 1;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -44,9 +53,14 @@ public class User {
         this.createdAt = LocalDateTime.now();
     }
 
+    @Override
     public Long getId() {
         return id;
     }
+    @Override
+    public int lockClassId() {
+        return LOCK_CLASS_ID;
+    }
 
     public void setName(String name) {
         this.name = name;
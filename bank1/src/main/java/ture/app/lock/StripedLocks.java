@@ -0,0 +1,99 @@
+package ture.app.lock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Создаем класс StripedLocks - блокировки внутри JVM по ключу (id счёта).
+// Для чего это нужно:
+// - Конкурирующие переводы по одному счёту ждут в памяти, а не на pg_advisory_xact_lock,
+//   и не удерживают соединения из пула Hikari
+// - Ключи распределяются по фиксированному числу честных (fair) ReentrantLock ("полос")
+// - Блокировки СУБД остаются - они нужны для согласованности между узлами
+@Component
+public class StripedLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final long timeoutNanos;
+
+    private final Timer waitTimer;
+    private final Counter timeouts;
+
+    // удерживаемые блокировки, освобождаются через close()
+    public interface Handle extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public StripedLocks(@Value("${app.locks.local.stripes:1024}") int stripes,
+                        @Value("${app.locks.local.timeout-ms:5000}") long timeoutMs,
+                        MeterRegistry registry) {
+        // число полос - степень двойки
+        int size = 1;
+        while (size < stripes) size <<= 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++)
+            this.stripes[i] = new ReentrantLock(true);
+        this.mask = size - 1;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        this.waitTimer = Timer.builder("app.locks.local.wait")
+                .description("Ожидание блокировки внутри JVM")
+                .register(registry);
+        this.timeouts = Counter.builder("app.locks.local.timeouts")
+                .description("Отказы по таймауту ожидания блокировки внутри JVM")
+                .register(registry);
+        Gauge.builder("app.locks.local.queued", this, StripedLocks::queued)
+                .description("Потоки в очереди на блокировки внутри JVM")
+                .register(registry);
+    }
+
+    // захват блокировок по ключам: полосы берутся в порядке возрастания номера (без взаимоблокировок)
+    public Handle lock(long... keys) {
+        int[] idx = Arrays.stream(keys).mapToInt(this::stripe).sorted().distinct().toArray();
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+        int taken = 0;
+        try {
+            for (int i : idx) {
+                if(!stripes[i].tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    timeouts.increment();
+                    throw new RuntimeException("Account lock timeout");
+                }
+                taken++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Account lock interrupted", e);
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if(taken < idx.length)
+                unlock(idx, taken);
+        }
+        return () -> unlock(idx, idx.length);
+    }
+
+    private void unlock(int[] idx, int count) {
+        for (int i = count - 1; i >= 0; i--)
+            stripes[idx[i]].unlock();
+    }
+
+    private int stripe(long key) {
+        int h = Long.hashCode(key);
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private double queued() {
+        int sum = 0;
+        for (var stripe : stripes)
+            sum += stripe.getQueueLength();
+        return sum;
+    }
+}
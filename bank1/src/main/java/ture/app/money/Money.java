@@ -0,0 +1,107 @@
+package ture.app.money;
+
+// Кодек денежных сумм: строка "1234.45" <-> целое число минимальных единиц (копеек) в long.
+// Для чего это нужно:
+// - Без BigDecimal, double и Formatter: разбор и вывод идут по символам, без промежуточных объектов
+//   (кроме итоговой строки) и без ошибок округления плавающей точки
+// - Строгая проверка: не более SCALE знаков после точки, переполнение long - ошибка, а не усечение
+public final class Money {
+    // знаков после точки (копейки)
+    public static final int SCALE = 2;
+
+    // строка максимальной длины: знак, 19 цифр, точка и ведущий ноль
+    private static final int MAX_LENGTH = 22;
+
+    private Money() {}
+
+    // разбор суммы: [+|-]цифры[.цифры], до SCALE знаков после точки, пробелы по краям допускаются
+    public static long parse(CharSequence value) {
+        if(value == null)
+            throw new IllegalArgumentException("Amount is empty");
+        int start = 0;
+        int end = value.length();
+        while (start < end && Character.isWhitespace(value.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(value.charAt(end - 1))) end--;
+        if(start == end)
+            throw new IllegalArgumentException("Amount is empty");
+
+        boolean negative = false;
+        char first = value.charAt(start);
+        if(first == '-' || first == '+') {
+            negative = first == '-';
+            start++;
+        }
+
+        // накапливаем отрицательное значение: диапазон long несимметричен
+        long result = 0;
+        int intDigits = 0;
+        int fracDigits = -1;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if(c == '.') {
+                if(fracDigits >= 0)
+                    throw invalid(value);
+                fracDigits = 0;
+                continue;
+            }
+            if(c < '0' || c > '9')
+                throw invalid(value);
+            if(fracDigits >= 0) {
+                if(++fracDigits > SCALE)
+                    throw new IllegalArgumentException("Amount must have at most " + SCALE + " decimal places");
+            } else {
+                intDigits++;
+            }
+            result = appendDigit(result, c - '0');
+        }
+        if(intDigits == 0 || fracDigits == 0)
+            throw invalid(value);
+        for (int i = Math.max(fracDigits, 0); i < SCALE; i++)
+            result = appendDigit(result, 0);
+
+        if(negative)
+            return result;
+        if(result == Long.MIN_VALUE)
+            throw outOfRange();
+        return -result;
+    }
+
+    // вывод суммы: минимальные единицы -> "1234.45" (всегда SCALE знаков после точки)
+    public static String format(long minor) {
+        var buf = new char[MAX_LENGTH];
+        int pos = buf.length;
+        // работаем с отрицательным значением: -Long.MIN_VALUE не помещается в long
+        long value = minor < 0 ? minor : -minor;
+        for (int i = 0; i < SCALE; i++) {
+            buf[--pos] = (char) ('0' - value % 10);
+            value /= 10;
+        }
+        buf[--pos] = '.';
+        do {
+            buf[--pos] = (char) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        if(minor < 0)
+            buf[--pos] = '-';
+        return new String(buf, pos, buf.length - pos);
+    }
+
+    // null-безопасный вывод для необязательных сумм
+    public static String format(Long minor) {
+        return minor == null ? null : format(minor.longValue());
+    }
+
+    private static long appendDigit(long negativeValue, int digit) {
+        if(negativeValue < (Long.MIN_VALUE + digit) / 10)
+            throw outOfRange();
+        return negativeValue * 10 - digit;
+    }
+
+    private static IllegalArgumentException invalid(CharSequence value) {
+        return new IllegalArgumentException("Amount must be in format 123.45: '" + value + "'");
+    }
+
+    private static IllegalArgumentException outOfRange() {
+        return new IllegalArgumentException("Amount is out of range");
+    }
+}
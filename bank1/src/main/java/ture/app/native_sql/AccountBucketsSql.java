@@ -0,0 +1,99 @@
+package ture.app.native_sql;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ture.app.cache.AccountCache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Создаем класс AccountBucketsSql для работы с корзинами остатка "горячих" счетов.
+// Остаток счёта = accounts.amount (основная часть) + сумма корзин account_buckets.
+// Зачисления идут в одну из корзин без блокировки строки счёта,
+// списания идут из основной части, при нехватке корзины сливаются в неё.
+@Repository
+public class AccountBucketsSql {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AccountCache accountCache;
+
+    private static final String SHARDED_SQL =
+            "SELECT id, buckets FROM accounts WHERE buckets > 0";
+    private static final String BALANCE_SQL =
+            "SELECT " + BalanceSql.AMOUNT + " FROM accounts a WHERE a.id = ?";
+    private static final String CREATE_BUCKETS_SQL = """
+            INSERT INTO account_buckets (account_id, bucket)
+            SELECT ?, generate_series(0, ? - 1)
+            ON CONFLICT DO NOTHING
+            """;
+    private static final String SET_BUCKETS_SQL =
+            "UPDATE accounts SET buckets = ? WHERE id = ?";
+    private static final String CREDIT_SQL = """
+            INSERT INTO account_buckets (account_id, bucket, amount) VALUES (?, ?, ?)
+            ON CONFLICT (account_id, bucket) DO UPDATE SET amount = account_buckets.amount + EXCLUDED.amount
+            """;
+    // обнуляет все корзины счёта и возвращает их сумму (корзины блокируются)
+    private static final String DRAIN_SQL = """
+            WITH old AS (
+                SELECT bucket, amount FROM account_buckets WHERE account_id = ? AND amount <> 0 FOR UPDATE
+            ), upd AS (
+                UPDATE account_buckets b SET amount = 0 FROM old WHERE b.account_id = ? AND b.bucket = old.bucket
+            )
+            SELECT coalesce(sum(amount), 0) FROM old
+            """;
+
+    private static final String LOCK_ACCOUNT_SQL =
+            "SELECT id FROM accounts WHERE id = ? FOR UPDATE";
+    private static final String ADD_AMOUNT_SQL =
+            "UPDATE accounts SET amount = amount + ?, version = version + 1 WHERE id = ?";
+
+    // счета с корзинами: id -> число корзин
+    public Map<Long, Integer> findSharded() {
+        Map<Long, Integer> sharded = new HashMap<>();
+        jdbcTemplate.query(SHARDED_SQL, rs -> {
+            sharded.put(rs.getLong("id"), rs.getInt("buckets"));
+        });
+        return sharded;
+    }
+
+    // полный остаток счёта (null - счёт не найден)
+    public Long balance(Long accountId) {
+        var rows = jdbcTemplate.queryForList(BALANCE_SQL, Long.class, accountId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // назначение счёту корзин (корзины с номером >= buckets остаются и сливаются при списании)
+    public boolean shard(Long accountId, int buckets) {
+        if(jdbcTemplate.update(SET_BUCKETS_SQL, buckets, accountId) == 0)
+            return false;
+        jdbcTemplate.update(CREATE_BUCKETS_SQL, accountId, buckets);
+        return true;
+    }
+
+    // зачисление в корзину
+    public void credit(Long accountId, int bucket, Long amount) {
+        jdbcTemplate.update(CREDIT_SQL, accountId, bucket, amount);
+        accountCache.evictAfterCommit(accountId);
+    }
+
+    // слив корзин: возвращает сумму, которую нужно добавить к основной части
+    public long drain(Long accountId) {
+        var drained = jdbcTemplate.queryForObject(DRAIN_SQL, Long.class, accountId, accountId);
+        return drained == null ? 0 : drained;
+    }
+
+    // слив корзин в основную часть (в транзакции): строка счёта блокируется до корзин - в том же порядке,
+    // что и при переводе; возвращает перенесённую сумму
+    public long drainInto(Long accountId) {
+        jdbcTemplate.queryForList(LOCK_ACCOUNT_SQL, Long.class, accountId);
+        var drained = drain(accountId);
+        if(drained != 0) {
+            jdbcTemplate.update(ADD_AMOUNT_SQL, drained, accountId);
+            accountCache.evictAfterCommit(accountId);
+        }
+        return drained;
+    }
+}
@@ -1,13 +1,27 @@
 package ture.app.native_sql;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.repository.query.Param;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ture.app.entity.Account;
+import ture.app.entity.Transaction;
+import ture.app.entity.User;
 
 import java.sql.PreparedStatement;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 // Создаем класс AppLocks для работы с sql-запросами напрямую
 @Repository
@@ -15,31 +29,115 @@ public class AppLocks  {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private MeterRegistry registry;
+
+    // метрики по классу ключа (keyClass): ожидание блокировки и число случаев, когда она была занята
+    private record LockMeters(Timer wait, Counter contended) {}
+    private final Map<String, LockMeters> metersByClass = new ConcurrentHashMap<>();
+
+    // ключ ресурса транзакции со списком уже взятых блокировок
+    private static final Object HELD_LOCKS = new Object();
+
     private final PreparedStatementCreator lockStatementCreator = connection ->
             connection.prepareStatement("SELECT pg_advisory_xact_lock(hashtext(?))");
     private final PreparedStatementCreator tryLockStatementCreator = connection ->
             connection.prepareStatement("SELECT pg_try_advisory_xact_lock(hashtext(?))");
+    private final PreparedStatementCreator lockKeyStatementCreator = connection ->
+            connection.prepareStatement("SELECT pg_advisory_xact_lock(?, ?)");
+    private final PreparedStatementCreator tryLockKeyStatementCreator = connection ->
+            connection.prepareStatement("SELECT pg_try_advisory_xact_lock(?, ?)");
 
     private void lck(String resource) {
-        jdbcTemplate.execute(lockStatementCreator, (PreparedStatement ps) -> {
-            ps.setString(1, resource);
-            ps.execute();
-            return null;
-        });
+        var start = System.nanoTime();
+        var meters = meters("resource");
+        // без конкуренции - один запрос try_lock, занятая блокировка - учитываем и ждём её
+        if(!tryLock(resource)) {
+            meters.contended().increment();
+            jdbcTemplate.execute(lockStatementCreator, (PreparedStatement ps) -> {
+                ps.setString(1, resource);
+                ps.execute();
+                return null;
+            });
+        }
+        meters.wait().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
 
-    // формирование блокируемой строки на основе объекта
-    public String getLockResource(Object obj) {
-        var clazz = obj.getClass();
-        StringBuilder sb = new StringBuilder(clazz.getSimpleName());
-        try {
-            var field = clazz.getDeclaredField("Id");
-            field.setAccessible(true);
-            sb.append(String.format(": %s",field.get(obj)));
-        } catch (NoSuchFieldException | IllegalAccessException e) {
+    private void lck(LockKey key) {
+        // блокировка уже взята в этой транзакции - повторно в СУБД не обращаемся
+        var held = heldLocks();
+        if(held != null && !held.add(key))
+            return;
+        var start = System.nanoTime();
+        var meters = meters(keyClass(key.classId()));
+        if(!tryLock(key)) {
+            meters.contended().increment();
+            jdbcTemplate.execute(lockKeyStatementCreator, (PreparedStatement ps) -> {
+                ps.setInt(1, key.classId());
+                ps.setInt(2, key.objectId());
+                ps.execute();
+                return null;
+            });
+        }
+        meters.wait().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private LockMeters meters(String keyClass) {
+        return metersByClass.computeIfAbsent(keyClass, name -> new LockMeters(
+                Timer.builder("app.locks.advisory.wait")
+                        .description("Получение advisory-блокировки СУБД (с ожиданием, если она занята)")
+                        .tag("keyClass", name)
+                        .publishPercentileHistogram()
+                        .register(registry),
+                Counter.builder("app.locks.advisory.contended")
+                        .description("Advisory-блокировки, занятые другой транзакцией в момент запроса")
+                        .tag("keyClass", name)
+                        .register(registry)));
+    }
+
+    // имя класса ключа для тега метрик
+    private static String keyClass(int classId) {
+        return switch (classId) {
+            case User.LOCK_CLASS_ID -> "user";
+            case Account.LOCK_CLASS_ID -> "account";
+            case Transaction.LOCK_CLASS_ID -> "transaction";
+            default -> String.valueOf(classId);
+        };
+    }
+
+    // блокировки, взятые в текущей транзакции (null - транзакции нет)
+    @SuppressWarnings("unchecked")
+    private Set<LockKey> heldLocks() {
+        if(!TransactionSynchronizationManager.isSynchronizationActive())
+            return null;
+        var held = (Set<LockKey>) TransactionSynchronizationManager.getResource(HELD_LOCKS);
+        if(held == null) {
+            var locks = new HashSet<LockKey>();
+            TransactionSynchronizationManager.bindResource(HELD_LOCKS, locks);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResource(HELD_LOCKS);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(HELD_LOCKS, locks);
+                }
 
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(HELD_LOCKS);
+                }
+            });
+            held = locks;
         }
-        return sb.toString();
+        return held;
+    }
+
+    // формирование ключа блокировки на основе объекта (null - объект ещё не сохранён)
+    public LockKey getLockKey(Object obj) {
+        return LockKey.of(obj);
     }
 
     // блокировк по строке
@@ -47,20 +145,36 @@ public class AppLocks  {
         this.lck(resource);
     }
 
+    // блокировк по ключу
+    public void lock(LockKey key) {
+        this.lck(key);
+    }
+
     // блокировк по объекту
     public void lock(Object object) {
-        var resource = getLockResource(object);
-        this.lck(resource);
+        var key = getLockKey(object);
+        if(key != null)
+            this.lck(key);
     }
 
-    // блокировка по массиву объектов
+    // блокировка по массиву объектов (в порядке возрастания ключей, повторы - один раз)
     public void lock(Object[] m) {
         Arrays.stream(m)
-              .map(this::getLockResource)
+              .map(this::getLockKey)
+              .filter(Objects::nonNull)
               .sorted()
+              .distinct()
               .forEach(this::lck);
     }
 
+    // блокировка по набору ключей (в порядке возрастания, повторы - один раз)
+    public void lock(Collection<LockKey> keys) {
+        keys.stream()
+            .sorted()
+            .distinct()
+            .forEach(this::lck);
+    }
+
     Boolean tryLock(String resource) {
         return jdbcTemplate.query(connection -> {
             var ps = tryLockStatementCreator.createPreparedStatement(connection);
@@ -71,4 +185,16 @@ public class AppLocks  {
             return rs.next() ? rs.getBoolean(1) : Boolean.FALSE;
         });
     }
+
+    Boolean tryLock(LockKey key) {
+        return jdbcTemplate.query(connection -> {
+            var ps = tryLockKeyStatementCreator.createPreparedStatement(connection);
+            ps.setInt(1, key.classId());
+            ps.setInt(2, key.objectId());
+            return ps;
+        }, rs -> {
+            // ResultSetExtractor
+            return rs.next() ? rs.getBoolean(1) : Boolean.FALSE;
+        });
+    }
 }
@@ -0,0 +1,34 @@
+package ture.app.native_sql;
+
+// Остаток счёта в sql-запросах - одно выражение для остатка по счёту, списков счетов, переводов журнала и сверки.
+// Выражения рассчитаны на псевдоним a (accounts) и, в режиме ledger, s (ledger_snapshots, см. LEDGER_JOIN).
+// - Основная часть: accounts.amount, в режиме ledger - последний снимок (без снимка - accounts.amount)
+//   и проводки после него
+// - Корзины горячего счёта (account_buckets) - всегда: в них могли остаться зачисления до смены режима
+public final class BalanceSql {
+    private BalanceSql() {
+    }
+
+    public static final String BUCKETS =
+            "COALESCE((SELECT sum(b.amount) FROM account_buckets b WHERE b.account_id = a.id), 0)";
+
+    public static final String AMOUNT = "a.amount + " + BUCKETS;
+
+    public static final String LEDGER = """
+            COALESCE(s.balance, a.amount)
+              + COALESCE((SELECT sum(p.amount) FROM ledger_postings p
+                           WHERE p.account_id = a.id AND p.id > COALESCE(s.last_posting_id, 0)), 0)
+              + """ + BUCKETS;
+
+    public static final String LEDGER_JOIN = "LEFT JOIN ledger_snapshots s ON s.account_id = a.id";
+
+    // выражение остатка для режима перевода
+    public static String expression(boolean ledger) {
+        return ledger ? LEDGER : AMOUNT;
+    }
+
+    // соединение, нужное выражению остатка (пусто вне режима ledger)
+    public static String join(boolean ledger) {
+        return ledger ? LEDGER_JOIN : "";
+    }
+}
@@ -0,0 +1,156 @@
+package ture.app.native_sql;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Repository;
+import ture.app.cache.AccountCache;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Создаем класс BatchTransferSql для пакетных переводов напрямую через JDBC:
+// блокировка всех счетов группы одним запросом и batch-запись остатков и операций
+@Repository
+public class BatchTransferSql {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AccountCache accountCache;
+
+    // строки блокируются в порядке возрастания id - так же, как и в одиночных переводах
+    private static final String LOCK_SQL =
+            "SELECT id, amount, blocked_at, closed_at FROM accounts WHERE id = ANY(?) ORDER BY id FOR UPDATE";
+    private static final String READ_SQL =
+            "SELECT id, amount, blocked_at, closed_at FROM accounts WHERE id = ANY(?)";
+    private static final String UPDATE_SQL =
+            "UPDATE accounts SET amount = ?, version = version + 1 WHERE id = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO transactions (from_acc_id, to_acc_id, amount) VALUES (?, ?, ?)";
+
+    // состояние счёта в рамках группы переводов
+    public static class AccountState {
+        private final Long id;
+        private Long amount;
+        private final boolean blocked;
+        private final boolean closed;
+        private boolean changed;
+
+        AccountState(Long id, Long amount, boolean blocked, boolean closed) {
+            this.id = id;
+            this.amount = amount;
+            this.blocked = blocked;
+            this.closed = closed;
+        }
+
+        public Long getId() {
+            return id;
+        }
+        public Long getAmount() {
+            return amount;
+        }
+        public boolean isBlocked() {
+            return blocked;
+        }
+        public boolean isClosed() {
+            return closed;
+        }
+        public void addAmount(Long amount) {
+            this.amount += amount;
+            this.changed = true;
+        }
+    }
+
+    // записанная операция
+    public record Inserted(Long id, LocalDateTime createdAt) {}
+
+    // строка операции для записи
+    public record Row(Long fromAccID, Long toAccID, Long amount) {}
+
+    // блокировка и чтение счетов одним запросом
+    public Map<Long, AccountState> lockAccounts(Collection<Long> ids) {
+        return selectAccounts(LOCK_SQL, ids);
+    }
+
+    // чтение счетов без блокировки
+    public Map<Long, AccountState> readAccounts(Collection<Long> ids) {
+        return selectAccounts(READ_SQL, ids);
+    }
+
+    private Map<Long, AccountState> selectAccounts(String sql, Collection<Long> ids) {
+        Map<Long, AccountState> accounts = new LinkedHashMap<>();
+        jdbcTemplate.query(sql,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())),
+                rs -> {
+                    var id = rs.getLong("id");
+                    accounts.put(id, new AccountState(
+                            id,
+                            rs.getLong("amount"),
+                            rs.getTimestamp("blocked_at") != null,
+                            rs.getTimestamp("closed_at") != null));
+                });
+        return accounts;
+    }
+
+    // запись итоговых остатков изменённых счетов (строки заблокированы, поэтому пишем абсолютные значения)
+    public void updateAmounts(Collection<AccountState> accounts) {
+        var changed = accounts.stream().filter(a -> a.changed).toList();
+        if(changed.isEmpty())
+            return;
+        accountCache.evictAfterCommit(changed.stream().map(AccountState::getId).toList());
+        jdbcTemplate.batchUpdate(UPDATE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                var account = changed.get(i);
+                ps.setLong(1, account.amount);
+                ps.setLong(2, account.id);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return changed.size();
+            }
+        });
+    }
+
+    // запись операций одним batch-запросом с возвратом id и created_at
+    public List<Inserted> insertTransactions(List<Row> rows) {
+        if(rows.isEmpty())
+            return List.of();
+        var keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_SQL, new String[]{"id", "created_at"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        var row = rows.get(i);
+                        ps.setLong(1, row.fromAccID());
+                        ps.setLong(2, row.toAccID());
+                        ps.setLong(3, row.amount());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                },
+                keyHolder);
+
+        var inserted = new ArrayList<Inserted>(rows.size());
+        for (Map<String, Object> keys : keyHolder.getKeyList()) {
+            inserted.add(new Inserted(
+                    ((Number) keys.get("id")).longValue(),
+                    ((Timestamp) keys.get("created_at")).toLocalDateTime()));
+        }
+        return inserted;
+    }
+}
@@ -0,0 +1,267 @@
+package ture.app.native_sql;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ture.app.cache.AccountCache;
+import ture.app.entity.Account;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Создаем класс LedgerSql для журнала проводок (V9__Ledger.sql).
+// Остаток счёта = последний снимок (или accounts.amount, если снимка нет) + проводки после него
+// + корзины горячего счёта, оставшиеся от других режимов (BalanceSql.LEDGER). Снимок хранит основную часть
+// без корзин - её же он переносит в accounts.amount.
+// Проводки по счёту пишутся только под advisory-блокировкой этого счёта: списание - исключительной,
+// зачисление - разделяемой (зачисления на популярный счёт не ждут друг друга). Снимок берёт
+// исключительную блокировку, поэтому все проводки до него уже зафиксированы и порядок id не важен.
+@Repository
+public class LedgerSql {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AccountCache accountCache;
+
+    // src  - счёт списания с текущим остатком (строка не блокируется - её защищает advisory-блокировка;
+    //        FOR KEY SHARE на оба счёта всё же берёт проверка FK transactions, см. V9__Ledger.sql)
+    // tran - операция, только если проверки пройдены
+    // postings - две проводки операции
+    private static final String TRANSFER_SQL = """
+            WITH src AS (
+                SELECT a.id, a.blocked_at, a.closed_at, %s AS balance
+                  FROM accounts a LEFT JOIN ledger_snapshots s ON s.account_id = a.id
+                 WHERE a.id = ?
+            ), dst AS (
+                SELECT id, closed_at FROM accounts WHERE id = ?
+            ), tran AS (
+                INSERT INTO transactions (from_acc_id, to_acc_id, amount)
+                SELECT src.id, dst.id, ? FROM src CROSS JOIN dst
+                 WHERE src.blocked_at IS NULL
+                   AND src.closed_at IS NULL
+                   AND dst.closed_at IS NULL
+                   AND src.balance >= ?
+                RETURNING id, created_at
+            ), postings AS (
+                INSERT INTO ledger_postings (account_id, transaction_id, amount, created_at)
+                SELECT src.id, t.id, -?, t.created_at FROM tran t CROSS JOIN src
+                UNION ALL
+                SELECT dst.id, t.id, ?, t.created_at FROM tran t CROSS JOIN dst
+            )
+            SELECT t.id, t.created_at, src.balance - ? AS from_amount
+              FROM tran t CROSS JOIN src
+            """.formatted(BalanceSql.LEDGER);
+
+    private static final String BALANCE_SQL = """
+            SELECT %s AS balance
+              FROM accounts a LEFT JOIN ledger_snapshots s ON s.account_id = a.id
+             WHERE a.id = ?
+            """.formatted(BalanceSql.LEDGER);
+
+    private static final String DIAGNOSE_SQL = """
+            SELECT a.id, a.blocked_at, a.closed_at, %s AS balance
+              FROM accounts a LEFT JOIN ledger_snapshots s ON s.account_id = a.id
+             WHERE a.id IN (?, ?)
+            """.formatted(BalanceSql.LEDGER);
+
+    // блокировки счетов группы переводов одним запросом: ключи переданы в порядке возрастания id счёта,
+    // OFFSET 0 не даёт планировщику переставить вызовы
+    private static final String LOCK_CHUNK_SQL = """
+            SELECT CASE WHEN t.debit
+                        THEN pg_advisory_xact_lock(%1$d, t.lock_id)::text
+                        ELSE pg_advisory_xact_lock_shared(%1$d, t.lock_id)::text END
+              FROM (SELECT * FROM unnest(?::int[], ?::boolean[]) WITH ORDINALITY AS u(lock_id, debit, ord)
+                     ORDER BY ord OFFSET 0) t
+            """.formatted(Account.LOCK_CLASS_ID);
+
+    private static final String READ_CHUNK_SQL = """
+            SELECT a.id, a.blocked_at, a.closed_at, %s AS balance
+              FROM accounts a LEFT JOIN ledger_snapshots s ON s.account_id = a.id
+             WHERE a.id = ANY(?)
+            """.formatted(BalanceSql.LEDGER);
+
+    private static final String INSERT_POSTING_SQL =
+            "INSERT INTO ledger_postings (account_id, transaction_id, amount, created_at) VALUES (?, ?, ?, ?)";
+
+    // счета с проводками после указанной (кандидаты на снимок)
+    private static final String CHANGED_SQL =
+            "SELECT DISTINCT account_id FROM ledger_postings WHERE id > ?";
+
+    private static final String LAST_SNAPSHOT_SQL =
+            "SELECT COALESCE(max(last_posting_id), 0) FROM ledger_snapshots";
+
+    private static final String MAX_POSTING_SQL =
+            "SELECT COALESCE(max(id), 0) FROM ledger_postings";
+
+    // новый снимок: прежний снимок (или accounts.amount) + проводки после него
+    private static final String SNAPSHOT_SQL = """
+            WITH prev AS (
+                SELECT COALESCE(s.balance, a.amount) AS balance, COALESCE(s.last_posting_id, 0) AS last_posting_id
+                  FROM accounts a LEFT JOIN ledger_snapshots s ON s.account_id = a.id
+                 WHERE a.id = ?
+            ), delta AS (
+                SELECT sum(p.amount) AS amount, max(p.id) AS last_posting_id
+                  FROM ledger_postings p
+                 WHERE p.account_id = ? AND p.id > (SELECT last_posting_id FROM prev)
+            ), snapshot AS (
+                INSERT INTO ledger_snapshots (account_id, balance, last_posting_id)
+                SELECT ?, prev.balance + delta.amount, delta.last_posting_id
+                  FROM prev CROSS JOIN delta
+                 WHERE delta.last_posting_id IS NOT NULL
+                ON CONFLICT (account_id) DO UPDATE
+                   SET balance = EXCLUDED.balance,
+                       last_posting_id = EXCLUDED.last_posting_id,
+                       created_at = NOW()
+                RETURNING balance
+            )
+            UPDATE accounts SET amount = snapshot.balance, version = version + 1
+              FROM snapshot
+             WHERE accounts.id = ?
+            RETURNING accounts.id
+            """;
+
+    // состояние счёта для определения причины отказа
+    public record AccountState(boolean blocked, boolean closed, long balance) {}
+
+    // блокировки счетов перевода в порядке возрастания id: списание - исключительная, зачисление - разделяемая
+    public void lockForTransfer(Long fromAccID, Long toAccID) {
+        var debit = "pg_advisory_xact_lock(" + Account.LOCK_CLASS_ID + ", ?)";
+        var credit = "pg_advisory_xact_lock_shared(" + Account.LOCK_CLASS_ID + ", ?)";
+        if(fromAccID <= toAccID)
+            jdbcTemplate.queryForList("SELECT " + debit + ", " + credit, lockId(fromAccID), lockId(toAccID));
+        else
+            jdbcTemplate.queryForList("SELECT " + credit + ", " + debit, lockId(toAccID), lockId(fromAccID));
+    }
+
+    // перевод (блокировки уже взяты), null - проверки не пройдены и ничего не записано
+    public TransferSql.Result transfer(Long fromAccID, Long toAccID, Long amount) {
+        var rows = jdbcTemplate.query(TRANSFER_SQL,
+                (rs, rowNum) -> new TransferSql.Result(
+                        rs.getLong("id"),
+                        rs.getTimestamp("created_at").toLocalDateTime(),
+                        rs.getLong("from_amount"),
+                        null),
+                fromAccID, toAccID,
+                amount, amount,
+                amount, amount,
+                amount);
+        if(rows.isEmpty())
+            return null;
+        accountCache.evictAfterCommit(fromAccID, toAccID);
+        return rows.get(0);
+    }
+
+    // блокировки счетов группы переводов в порядке возрастания id: счета списания - исключительная,
+    // остальные - разделяемая
+    public void lockAccounts(Collection<Long> ids, Set<Long> debit) {
+        var sorted = ids.stream().sorted().toList();
+        var lockIds = sorted.stream().map(LedgerSql::lockId).toArray();
+        var debits = sorted.stream().map(debit::contains).toArray();
+        jdbcTemplate.query(LOCK_CHUNK_SQL,
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("integer", lockIds));
+                    ps.setArray(2, ps.getConnection().createArrayOf("boolean", debits));
+                },
+                rs -> {});
+    }
+
+    // остатки счетов группы по журналу (блокировки уже взяты)
+    public Map<Long, BatchTransferSql.AccountState> readAccounts(Collection<Long> ids) {
+        Map<Long, BatchTransferSql.AccountState> accounts = new LinkedHashMap<>();
+        jdbcTemplate.query(READ_CHUNK_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())),
+                rs -> {
+                    var id = rs.getLong("id");
+                    accounts.put(id, new BatchTransferSql.AccountState(
+                            id,
+                            rs.getLong("balance"),
+                            rs.getTimestamp("blocked_at") != null,
+                            rs.getTimestamp("closed_at") != null));
+                });
+        return accounts;
+    }
+
+    // две проводки на каждую записанную операцию группы одним batch-запросом
+    public void insertPostings(List<BatchTransferSql.Row> rows, List<BatchTransferSql.Inserted> inserted) {
+        if(rows.isEmpty())
+            return;
+        var accountIds = new TreeSet<Long>();
+        for (var row : rows) {
+            accountIds.add(row.fromAccID());
+            accountIds.add(row.toAccID());
+        }
+        accountCache.evictAfterCommit(accountIds);
+        jdbcTemplate.batchUpdate(INSERT_POSTING_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                var row = rows.get(i / 2);
+                var tran = inserted.get(i / 2);
+                var debit = i % 2 == 0;
+                ps.setLong(1, debit ? row.fromAccID() : row.toAccID());
+                ps.setLong(2, tran.id());
+                ps.setLong(3, debit ? -row.amount() : row.amount());
+                ps.setTimestamp(4, Timestamp.valueOf(tran.createdAt()));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size() * 2;
+            }
+        });
+    }
+
+    // остаток по журналу (null - счёта нет)
+    public Long balance(Long accountId) {
+        return jdbcTemplate.query(BALANCE_SQL, rs -> rs.next() ? rs.getLong("balance") : null, accountId);
+    }
+
+    // состояние счетов для определения причины отказа
+    public Map<Long, AccountState> diagnose(Long fromAccID, Long toAccID) {
+        Map<Long, AccountState> states = new HashMap<>();
+        jdbcTemplate.query(DIAGNOSE_SQL, rs -> {
+            states.put(rs.getLong("id"), new AccountState(
+                    rs.getTimestamp("blocked_at") != null,
+                    rs.getTimestamp("closed_at") != null,
+                    rs.getLong("balance")));
+        }, fromAccID, toAccID);
+        return states;
+    }
+
+    public List<Long> changedAccounts(long afterPostingId) {
+        return jdbcTemplate.queryForList(CHANGED_SQL, Long.class, afterPostingId);
+    }
+
+    public long lastSnapshotPostingId() {
+        return jdbcTemplate.queryForObject(LAST_SNAPSHOT_SQL, Long.class);
+    }
+
+    public long maxPostingId() {
+        return jdbcTemplate.queryForObject(MAX_POSTING_SQL, Long.class);
+    }
+
+    // снимок остатка счёта (в транзакции): ждёт завершения переводов по счёту, пишет снимок
+    // и переносит остаток в accounts.amount; false - новых проводок не было
+    public boolean snapshot(Long accountId) {
+        jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(" + Account.LOCK_CLASS_ID + ", ?)", lockId(accountId));
+        var updated = jdbcTemplate.queryForList(SNAPSHOT_SQL, Long.class, accountId, accountId, accountId, accountId);
+        if(updated.isEmpty())
+            return false;
+        accountCache.evictAfterCommit(accountId);
+        return true;
+    }
+
+    // ключ advisory-блокировки счёта - тот же, что у AppLocks (LockKey)
+    private static int lockId(Long accountId) {
+        return LockKey.of(Account.LOCK_CLASS_ID, accountId).objectId();
+    }
+}
@@ -0,0 +1,44 @@
+package ture.app.native_sql;
+
+import org.hibernate.proxy.HibernateProxy;
+import ture.app.entity.Account;
+import ture.app.entity.Lockable;
+import ture.app.entity.Transaction;
+import ture.app.entity.User;
+
+// Ключ advisory-блокировки для pg_advisory_xact_lock(int, int): (номер класса, id объекта).
+// id до 2^31 отображаются без коллизий, большие - сворачиваются в int.
+public record LockKey(int classId, int objectId) implements Comparable<LockKey> {
+
+    public static LockKey of(int classId, long id) {
+        return new LockKey(classId, Long.hashCode(id));
+    }
+
+    public static LockKey of(Object obj) {
+        // прокси Hibernate: id и класс берём из прокси, без загрузки сущности из СУБД
+        if(obj instanceof HibernateProxy proxy) {
+            var initializer = proxy.getHibernateLazyInitializer();
+            return of(classId(initializer.getPersistentClass()), (Long) initializer.getIdentifier());
+        }
+        if(obj instanceof Lockable lockable) {
+            // новый объект (ещё без id) никому не виден - блокировать нечего
+            var id = lockable.getId();
+            return id == null ? null : of(lockable.lockClassId(), id);
+        }
+        throw new IllegalArgumentException("Object is not lockable: " + obj.getClass().getName());
+    }
+
+    // номер класса блокируемой сущности (тот же, что возвращает lockClassId())
+    private static int classId(Class<?> type) {
+        if(type == User.class) return User.LOCK_CLASS_ID;
+        if(type == Account.class) return Account.LOCK_CLASS_ID;
+        if(type == Transaction.class) return Transaction.LOCK_CLASS_ID;
+        throw new IllegalArgumentException("Object is not lockable: " + type.getName());
+    }
+
+    @Override
+    public int compareTo(LockKey o) {
+        int c = Integer.compare(classId, o.classId);
+        return c != 0 ? c : Integer.compare(objectId, o.objectId);
+    }
+}
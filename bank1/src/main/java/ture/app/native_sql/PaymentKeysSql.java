@@ -0,0 +1,136 @@
+package ture.app.native_sql;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Создаем класс PaymentKeysSql для хранения ключей идемпотентности платежей (таблица payment_keys).
+// Ключ занимается одним INSERT ... ON CONFLICT DO NOTHING: уникальный индекс гарантирует,
+// что из одновременных запросов с одним ключом платёж выполнит только один.
+// Занятый ключ без результата, занятый раньше срока аренды, можно занять заново (reclaim). Результат пишется
+// только в ключ без результата: из двух запросов, занявших ключ, зафиксировать перевод сможет только один.
+@Repository
+public class PaymentKeysSql {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO payment_keys (idempotency_key, from_acc_id, to_acc_id, amount)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (idempotency_key) DO NOTHING
+            """;
+    // тот же платёж, результата нет, аренда истекла
+    private static final String RECLAIM_SQL = """
+            UPDATE payment_keys SET claimed_at = NOW()
+             WHERE idempotency_key = ?
+               AND from_acc_id = ? AND to_acc_id = ? AND amount = ?
+               AND transaction_id IS NULL
+               AND claimed_at < NOW() - make_interval(secs => ?)
+            """;
+    private static final String FIND_SQL = """
+            SELECT from_acc_id, to_acc_id, amount, transaction_id, transaction_created_at
+              FROM payment_keys
+             WHERE idempotency_key = ?
+            """;
+    private static final String COMPLETE_SQL =
+            "UPDATE payment_keys SET transaction_id = ?, transaction_created_at = ? " +
+            "WHERE idempotency_key = ? AND transaction_id IS NULL";
+    private static final String RELEASE_SQL =
+            "DELETE FROM payment_keys WHERE idempotency_key = ? AND transaction_id IS NULL";
+    private static final String RELEASE_ALL_SQL =
+            "DELETE FROM payment_keys WHERE idempotency_key = ANY(?) AND transaction_id IS NULL";
+    private static final String DELETE_OLDER_SQL =
+            "DELETE FROM payment_keys WHERE created_at < ?";
+
+    // платёж по ключу: параметры и, если он выполнен, id и дата операции
+    public record Stored(Long fromAccID, Long toAccID, Long amount, Long transactionId, LocalDateTime createdAt) {
+        public boolean isCompleted() {
+            return transactionId != null;
+        }
+    }
+
+    // true - ключ занят этим вызовом, false - ключ уже есть
+    public boolean insert(String key, Long fromAccID, Long toAccID, Long amount) {
+        return jdbcTemplate.update(INSERT_SQL, key, fromAccID, toAccID, amount) == 1;
+    }
+
+    // true - ключ с истекшей арендой занят заново этим вызовом
+    public boolean reclaim(String key, Long fromAccID, Long toAccID, Long amount, long leaseSeconds) {
+        return jdbcTemplate.update(RECLAIM_SQL, key, fromAccID, toAccID, amount, leaseSeconds) == 1;
+    }
+
+    public Optional<Stored> find(String key) {
+        return jdbcTemplate.query(FIND_SQL, (rs, rowNum) -> {
+            var createdAt = rs.getTimestamp("transaction_created_at");
+            return new Stored(
+                    rs.getLong("from_acc_id"),
+                    rs.getLong("to_acc_id"),
+                    rs.getLong("amount"),
+                    rs.getObject("transaction_id", Long.class),
+                    createdAt == null ? null : createdAt.toLocalDateTime());
+        }, key).stream().findFirst();
+    }
+
+    // результат выполненного платежа (false - результат по ключу уже записан или ключ освобождён)
+    public boolean complete(String key, Long transactionId, LocalDateTime createdAt) {
+        return jdbcTemplate.update(COMPLETE_SQL, transactionId, Timestamp.valueOf(createdAt), key) == 1;
+    }
+
+    // результат выполненного платежа по ключу
+    public record Completed(String key, Long transactionId, LocalDateTime createdAt) {}
+
+    // результаты группы платежей одним batch-запросом.
+    // Результат - ключи, по которым результат не записан (уже записан другим запросом или ключ освобождён)
+    public List<String> completeAll(List<Completed> completed) {
+        var missed = new ArrayList<String>();
+        if(completed.isEmpty())
+            return missed;
+        var counts = jdbcTemplate.batchUpdate(COMPLETE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                var item = completed.get(i);
+                ps.setLong(1, item.transactionId());
+                ps.setTimestamp(2, Timestamp.valueOf(item.createdAt()));
+                ps.setString(3, item.key());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return completed.size();
+            }
+        });
+        // SUCCESS_NO_INFO (драйвер не вернул число строк) считается записью
+        for (int i = 0; i < counts.length; i++) {
+            if(counts[i] == 0)
+                missed.add(completed.get(i).key());
+        }
+        return missed;
+    }
+
+    // освобождение ключа неуспешного платежа (перевод не выполнен - повтор может выполнить его заново)
+    public void release(String key) {
+        jdbcTemplate.update(RELEASE_SQL, key);
+    }
+
+    // освобождение ключей группы платежей одним запросом
+    public void releaseAll(Collection<String> keys) {
+        if(keys.isEmpty())
+            return;
+        jdbcTemplate.update(RELEASE_ALL_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", keys.toArray())));
+    }
+
+    public int deleteOlderThan(LocalDateTime time) {
+        return jdbcTemplate.update(DELETE_OLDER_SQL, Timestamp.valueOf(time));
+    }
+}
@@ -0,0 +1,66 @@
+package ture.app.native_sql;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.util.function.Consumer;
+
+// Создаем класс ReconciliationSql для сверки остатков с журналом операций по диапазону id счетов.
+// Сумма операций считается в СУБД (по индексам from_acc_id/to_acc_id, только строки диапазона),
+// клиенту приходит по строке на счёт - курсором по fetchSize строк.
+@Repository
+public class ReconciliationSql {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.reconciliation.fetch-size:1000}")
+    private int fetchSize;
+
+    private static final String RANGE_SQL = """
+            WITH moves AS (
+                SELECT from_acc_id AS account_id, -amount AS delta FROM transactions WHERE from_acc_id BETWEEN ? AND ?
+                UNION ALL
+                SELECT to_acc_id, amount FROM transactions WHERE to_acc_id BETWEEN ? AND ?
+            ), net AS (
+                SELECT account_id, sum(delta) AS net, count(*) AS moves FROM moves GROUP BY account_id
+            )
+            SELECT a.id, %s AS balance, COALESCE(n.net, 0) AS net, COALESCE(n.moves, 0) AS moves
+              FROM accounts a
+              %s
+              LEFT JOIN net n ON n.account_id = a.id
+             WHERE a.id BETWEEN ? AND ?
+            """;
+
+    private static final String ID_RANGE_SQL = "SELECT COALESCE(min(id), 0), COALESCE(max(id), -1) FROM accounts";
+
+    // счёт диапазона: остаток, сумма операций (зачисления минус списания) и число строк операций
+    public record Row(long accountId, long balance, long net, long moves) {}
+
+    public record IdRange(long min, long max) {}
+
+    public IdRange idRange() {
+        return jdbcTemplate.queryForObject(ID_RANGE_SQL, (rs, rowNum) -> new IdRange(rs.getLong(1), rs.getLong(2)));
+    }
+
+    // счета диапазона [fromId, toId] по одному (курсор - только внутри транзакции, её открывает вызывающий)
+    public void scan(long fromId, long toId, boolean ledger, Consumer<Row> consumer) {
+        var sql = RANGE_SQL.formatted(BalanceSql.expression(ledger), BalanceSql.join(ledger));
+        var setter = new ArgumentPreparedStatementSetter(new Object[]{fromId, toId, fromId, toId, fromId, toId});
+        jdbcTemplate.query(con -> {
+                    var ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    setter.setValues(ps);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> consumer.accept(new Row(
+                        rs.getLong("id"),
+                        rs.getLong("balance"),
+                        rs.getLong("net"),
+                        rs.getLong("moves"))));
+    }
+}
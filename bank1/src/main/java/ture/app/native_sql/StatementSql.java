@@ -0,0 +1,169 @@
+package ture.app.native_sql;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Создаем класс StatementSql для чтения выписки по счёту постраничным поиском (keyset/seek):
+// следующая страница продолжается с последней строки предыдущей по (created_at, id),
+// поэтому каждая страница - короткий проход по индексу (account_id, created_at, id) без OFFSET.
+@Repository
+public class StatementSql {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // строк за один запрос к серверу при чтении курсором
+    @Value("${app.statement.fetch-size:1000}")
+    private int fetchSize;
+
+    // операция выписки (без загрузки сущностей)
+    public record Line(Long id, LocalDateTime createdAt, Long fromAccID, Long toAccID, Long amount) {}
+
+    // позиция продолжения выписки: последняя отданная строка
+    public record Cursor(LocalDateTime createdAt, Long id) {
+        public static Cursor of(Line line) {
+            return new Cursor(line.createdAt(), line.id());
+        }
+
+        // формат "2025-12-07T08:08:20.976_123"
+        public static Cursor parse(String value) {
+            if(value == null || value.isBlank())
+                return null;
+            var pos = value.lastIndexOf('_');
+            if(pos < 0) throw new IllegalArgumentException("Invalid statement cursor");
+            return new Cursor(LocalDateTime.parse(value.substring(0, pos)),
+                              Long.parseLong(value.substring(pos + 1)));
+        }
+
+        @Override
+        public String toString() {
+            return createdAt + "_" + id;
+        }
+    }
+
+    // последние операции нескольких счетов одним запросом: для каждого счёта - те же два прохода
+    // по индексам списаний и зачислений, что и у страницы выписки, не более limit строк
+    private static final String RECENT_SQL = """
+            SELECT a.account_id, l.id, l.created_at, l.from_acc_id, l.to_acc_id, l.amount
+              FROM unnest(?::bigint[]) AS a(account_id)
+             CROSS JOIN LATERAL (
+                   SELECT id, created_at, from_acc_id, to_acc_id, amount FROM (
+                       (SELECT id, created_at, from_acc_id, to_acc_id, amount FROM transactions
+                         WHERE from_acc_id = a.account_id
+                         ORDER BY created_at DESC, id DESC LIMIT ?)
+                       UNION ALL
+                       (SELECT id, created_at, from_acc_id, to_acc_id, amount FROM transactions
+                         WHERE to_acc_id = a.account_id AND from_acc_id <> a.account_id
+                         ORDER BY created_at DESC, id DESC LIMIT ?)
+                   ) t ORDER BY created_at DESC, id DESC LIMIT ?
+             ) l
+             ORDER BY a.account_id, l.created_at DESC, l.id DESC
+            """;
+
+    private static final RowMapper<Line> LINE_MAPPER = (rs, rowNum) -> new Line(
+            rs.getLong("id"),
+            rs.getTimestamp("created_at").toLocalDateTime(),
+            rs.getLong("from_acc_id"),
+            rs.getLong("to_acc_id"),
+            rs.getLong("amount"));
+
+    // страница выписки от новых операций к старым.
+    // Списания и зачисления читаются отдельными проходами по своим индексам и сливаются,
+    // перевод самому себе берётся только из списаний.
+    // since/until (включительно/не включительно) ограничивают период и отсекают лишние секции.
+    public List<Line> page(Long accountId, LocalDateTime since, LocalDateTime until, Cursor after, int limit) {
+        var args = new ArrayList<Object>();
+        var sql = select(accountId, since, until, after, limit, args) + " LIMIT ?";
+        args.add(limit);
+        return jdbcTemplate.query(sql, LINE_MAPPER, args.toArray());
+    }
+
+    // вся выписка за период одним запросом, строки читаются серверным курсором по fetchSize штук.
+    // Курсор в PostgreSQL работает только внутри транзакции (autocommit выключен) - её открывает вызывающий.
+    // Строки не накапливаются: каждая сразу передаётся в consumer, исключение из consumer прерывает чтение.
+    public void stream(Long accountId, LocalDateTime since, LocalDateTime until, Consumer<Line> consumer) {
+        var args = new ArrayList<Object>();
+        var sql = select(accountId, since, until, null, null, args);
+        var setter = new ArgumentPreparedStatementSetter(args.toArray());
+        jdbcTemplate.query(con -> {
+                    var ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    setter.setValues(ps);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> consumer.accept(LINE_MAPPER.mapRow(rs, rs.getRow())));
+    }
+
+    // последние limit операций каждого счёта (счета без операций в результате отсутствуют)
+    public Map<Long, List<Line>> recent(Collection<Long> accountIds, int limit) {
+        var result = new HashMap<Long, List<Line>>();
+        if(accountIds.isEmpty())
+            return result;
+        jdbcTemplate.query(RECENT_SQL,
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("bigint", accountIds.toArray()));
+                    ps.setInt(2, limit);
+                    ps.setInt(3, limit);
+                    ps.setInt(4, limit);
+                },
+                rs -> {
+                    result.computeIfAbsent(rs.getLong("account_id"), id -> new ArrayList<>())
+                          .add(LINE_MAPPER.mapRow(rs, rs.getRow()));
+                });
+        return result;
+    }
+
+    private static String select(Long accountId, LocalDateTime since, LocalDateTime until,
+                                 Cursor after, Integer limit, List<Object> args) {
+        return "SELECT id, created_at, from_acc_id, to_acc_id, amount FROM ("
+                + branch("from_acc_id", null, accountId, since, until, after, limit, args)
+                + " UNION ALL "
+                + branch("to_acc_id", "from_acc_id", accountId, since, until, after, limit, args)
+                + ") t ORDER BY created_at DESC, id DESC";
+    }
+
+    private static String branch(String column, String excludeColumn,
+                                 Long accountId, LocalDateTime since, LocalDateTime until,
+                                 Cursor after, Integer limit, List<Object> args) {
+        var sql = new StringBuilder("(SELECT id, created_at, from_acc_id, to_acc_id, amount FROM transactions WHERE ")
+                .append(column).append(" = ?");
+        args.add(accountId);
+        if(excludeColumn != null) {
+            sql.append(" AND ").append(excludeColumn).append(" <> ?");
+            args.add(accountId);
+        }
+        if(since != null) {
+            sql.append(" AND created_at >= ?");
+            args.add(Timestamp.valueOf(since));
+        }
+        if(until != null) {
+            sql.append(" AND created_at < ?");
+            args.add(Timestamp.valueOf(until));
+        }
+        if(after != null) {
+            sql.append(" AND (created_at, id) < (?, ?)");
+            args.add(Timestamp.valueOf(after.createdAt()));
+            args.add(after.id());
+        }
+        sql.append(" ORDER BY created_at DESC, id DESC");
+        if(limit != null) {
+            sql.append(" LIMIT ?");
+            args.add(limit);
+        }
+        return sql.append(")").toString();
+    }
+}
@@ -0,0 +1,123 @@
+package ture.app.native_sql;
+
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ture.app.cache.AccountCache;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Создаем класс TransferSql для выполнения перевода одним sql-запросом:
+// списание, зачисление, проверки счетов и запись в журнал операций за один round trip
+@Repository
+public class TransferSql {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AccountCache accountCache;
+
+    @Autowired
+    private AccountBucketsSql accountBucketsSql;
+
+    // locked - блокирует строки обоих счетов в порядке возрастания id (исключает взаимоблокировки)
+    // debit  - списывает, только если счёт не заблокирован, не закрыт и средств достаточно
+    // credit - зачисляет, только если списание прошло и счёт получателя не закрыт
+    // tran   - пишет операцию, только если изменены оба счёта
+    // Если хоть одно условие не выполнено - запрос не вернёт строк (частичное списание откатится вместе с транзакцией)
+    private static final String TRANSFER_SQL = """
+            WITH locked AS (
+                SELECT id FROM accounts WHERE id IN (?, ?) ORDER BY id FOR UPDATE
+            ), debit AS (
+                UPDATE accounts SET amount = amount - ?, version = version + 1
+                 WHERE id = ?
+                   AND (SELECT count(*) FROM locked) = 2
+                   AND blocked_at IS NULL
+                   AND closed_at IS NULL
+                   AND amount >= ?
+                RETURNING id, amount
+            ), credit AS (
+                UPDATE accounts SET amount = amount + ?, version = version + 1
+                 WHERE id = ?
+                   AND closed_at IS NULL
+                   AND EXISTS (SELECT 1 FROM debit)
+                RETURNING id, amount
+            ), tran AS (
+                INSERT INTO transactions (from_acc_id, to_acc_id, amount)
+                SELECT d.id, c.id, ? FROM debit d CROSS JOIN credit c
+                RETURNING id, created_at
+            )
+            SELECT t.id, t.created_at, d.amount AS from_amount, c.amount AS to_amount
+              FROM tran t CROSS JOIN debit d CROSS JOIN credit c
+            """;
+
+    private static final String DIAGNOSE_SQL =
+            "SELECT id, amount, blocked_at, closed_at FROM accounts WHERE id IN (?, ?)";
+
+    // результат перевода: id и дата операции, новые остатки счетов
+    public record Result(Long id, LocalDateTime createdAt, Long fromAmount, Long toAmount) {}
+
+    // строка счёта для определения причины отказа
+    private record AccountState(Long amount, LocalDateTime blockedAt, LocalDateTime closedAt) {}
+
+    // перевод одним запросом (счета должны быть разными), при отказе транзакция откатывается
+    @Transactional
+    public Result transfer(Long fromAccID, Long toAccID, Long amount) {
+        var rows = apply(fromAccID, toAccID, amount);
+        // отказ мог быть из-за нехватки основной части: сливаем корзины счёта и повторяем запрос
+        // (строка счёта уже заблокирована запросом, ничего не изменено)
+        if(rows.isEmpty() && accountBucketsSql.drainInto(fromAccID) > 0)
+            rows = apply(fromAccID, toAccID, amount);
+        if(rows.isEmpty())
+            throw diagnose(fromAccID, toAccID, amount);
+        accountCache.evictAfterCommit(fromAccID, toAccID);
+        return rows.get(0);
+    }
+
+    private List<Result> apply(Long fromAccID, Long toAccID, Long amount) {
+        return jdbcTemplate.query(TRANSFER_SQL,
+                (rs, rowNum) -> new Result(
+                        rs.getLong("id"),
+                        rs.getTimestamp("created_at").toLocalDateTime(),
+                        rs.getLong("from_amount"),
+                        rs.getLong("to_amount")),
+                fromAccID, toAccID,
+                amount, fromAccID, amount,
+                amount, toAccID,
+                amount);
+    }
+
+    // определение причины отказа (только на неуспешном пути, строки уже заблокированы в этой транзакции)
+    private RuntimeException diagnose(Long fromAccID, Long toAccID, Long amount) {
+        Map<Long, AccountState> states = new HashMap<>();
+        jdbcTemplate.query(DIAGNOSE_SQL, rs -> {
+            var blockedAt = rs.getTimestamp("blocked_at");
+            var closedAt = rs.getTimestamp("closed_at");
+            states.put(rs.getLong("id"), new AccountState(
+                    rs.getLong("amount"),
+                    blockedAt == null ? null : blockedAt.toLocalDateTime(),
+                    closedAt == null ? null : closedAt.toLocalDateTime()));
+        }, fromAccID, toAccID);
+
+        // те же сообщения и тот же порядок проверок, что и в JpaTransferService
+        var from_acc = states.get(fromAccID);
+        var to_acc = states.get(toAccID);
+        if(from_acc == null)
+            return new RuntimeException("From Account cannot be null");
+        if(to_acc == null)
+            return new RuntimeException("To Account cannot be null");
+        if(from_acc.blockedAt() != null)
+            return new RuntimeException("From Account is blocked");
+        if(from_acc.closedAt() != null)
+            return new RuntimeException("From Account is closed");
+        if(to_acc.closedAt() != null)
+            return new RuntimeException("To Account is closed");
+        if(from_acc.amount() < amount)
+            return new RuntimeException("From Amount must be greater than amount");
+        return new RuntimeException("Transfer was not applied");
+    }
+}
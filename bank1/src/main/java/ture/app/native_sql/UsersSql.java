@@ -0,0 +1,158 @@
+package ture.app.native_sql;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ture.app.service.TransferMode;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Создаем класс UsersSql для пакетного чтения пользователей и счетов одним запросом на пакет
+// (WHERE ... = ANY(?)) без загрузки сущностей и ленивых связей
+@Repository
+public class UsersSql {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static final String USERS_SQL =
+            "SELECT id, name, email, created_at FROM users WHERE id = ANY(?)";
+    // остаток - тем же выражением, что и у остатка по счёту (BalanceSql, с учётом режима перевода)
+    private static final String ACCOUNTS_SQL = """
+            SELECT a.id, a.user_id, a.name, a.created_at, a.blocked_at, a.closed_at, %s AS amount
+              FROM accounts a
+              %s
+             WHERE a.user_id = ANY(?)
+             ORDER BY a.user_id, a.id
+            """;
+
+    private static final String USERS_PAGE_SQL =
+            "SELECT id, name, email, created_at FROM users WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String ACCOUNTS_BY_ID_SQL = """
+            SELECT a.id, a.user_id, a.name, a.created_at, a.blocked_at, a.closed_at, %s AS amount
+              FROM accounts a
+              %s
+             WHERE a.id = ANY(?)
+            """;
+
+    private static final String ACCOUNT_META_SQL =
+            "SELECT id, user_id, name, created_at, blocked_at, closed_at FROM accounts WHERE id = ?";
+
+    @Value("${app.transfer.mode:jpa}")
+    private TransferMode transferMode;
+
+    private String accountsSql;
+    private String accountsByIdSql;
+
+    @PostConstruct
+    public void prepare() {
+        var ledger = transferMode == TransferMode.LEDGER;
+        accountsSql = ACCOUNTS_SQL.formatted(BalanceSql.expression(ledger), BalanceSql.join(ledger));
+        accountsByIdSql = ACCOUNTS_BY_ID_SQL.formatted(BalanceSql.expression(ledger), BalanceSql.join(ledger));
+    }
+
+    public record UserRow(Long id, String name, String email, LocalDateTime createdAt) {}
+
+    public record AccountRow(Long id, Long userId, String name, Long amount,
+                             LocalDateTime createdAt, LocalDateTime blockedAt, LocalDateTime closedAt) {}
+
+    // сведения о счёте без остатка (для кэша, см. AccountCache)
+    public record AccountMeta(Long id, Long userId, String name,
+                              LocalDateTime createdAt, LocalDateTime blockedAt, LocalDateTime closedAt) {
+        public boolean isBlocked() {
+            return blockedAt != null;
+        }
+        public boolean isClosed() {
+            return closedAt != null;
+        }
+    }
+
+    // пользователи по списку id (отсутствующих в результате нет)
+    public List<UserRow> findUsers(Collection<Long> ids) {
+        var users = new ArrayList<UserRow>(ids.size());
+        if(ids.isEmpty())
+            return users;
+        jdbcTemplate.query(USERS_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())),
+                rs -> {
+                    users.add(mapUser(rs));
+                });
+        return users;
+    }
+
+    // счета пользователей по списку id пользователей
+    public List<AccountRow> findAccounts(Collection<Long> userIds) {
+        var accounts = new ArrayList<AccountRow>();
+        if(userIds.isEmpty())
+            return accounts;
+        jdbcTemplate.query(accountsSql,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", userIds.toArray())),
+                rs -> {
+                    accounts.add(mapAccount(rs));
+                });
+        return accounts;
+    }
+
+    // страница пользователей после указанного id (keyset)
+    public List<UserRow> findUsersPage(Long afterId, int limit) {
+        return jdbcTemplate.query(USERS_PAGE_SQL, (rs, rowNum) -> mapUser(rs), afterId, limit);
+    }
+
+    // счета по списку id (отсутствующих в результате нет)
+    public List<AccountRow> findAccountsByIds(Collection<Long> ids) {
+        var accounts = new ArrayList<AccountRow>(ids.size());
+        if(ids.isEmpty())
+            return accounts;
+        jdbcTemplate.query(accountsByIdSql,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())),
+                rs -> {
+                    accounts.add(mapAccount(rs));
+                });
+        return accounts;
+    }
+
+    // сведения о счёте (пусто - счёт не найден)
+    public Optional<AccountMeta> findAccountMeta(Long accountId) {
+        var rows = jdbcTemplate.query(ACCOUNT_META_SQL,
+                (rs, rowNum) -> new AccountMeta(
+                        rs.getLong("id"),
+                        rs.getLong("user_id"),
+                        rs.getString("name"),
+                        toLocalDateTime(rs.getTimestamp("created_at")),
+                        toLocalDateTime(rs.getTimestamp("blocked_at")),
+                        toLocalDateTime(rs.getTimestamp("closed_at"))),
+                accountId);
+        return rows.stream().findFirst();
+    }
+
+    private static UserRow mapUser(ResultSet rs) throws SQLException {
+        return new UserRow(
+                rs.getLong("id"),
+                rs.getString("name"),
+                rs.getString("email"),
+                toLocalDateTime(rs.getTimestamp("created_at")));
+    }
+
+    private static AccountRow mapAccount(ResultSet rs) throws SQLException {
+        return new AccountRow(
+                rs.getLong("id"),
+                rs.getLong("user_id"),
+                rs.getString("name"),
+                rs.getLong("amount"),
+                toLocalDateTime(rs.getTimestamp("created_at")),
+                toLocalDateTime(rs.getTimestamp("blocked_at")),
+                toLocalDateTime(rs.getTimestamp("closed_at")));
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
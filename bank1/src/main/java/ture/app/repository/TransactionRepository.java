@@ -7,7 +7,7 @@ import org.springframework.stereotype.Repository;
 import ture.app.entity.Account;
 import ture.app.entity.Transaction;
 
-import java.util.Optional;
+import java.util.List;
 
 // Создаем интерфейс TransactionRepository, который будет отвечать за операции с базой данных.
 // Для чего это нужно:
@@ -19,6 +19,7 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
 
 
     // Эти методы Spring реализует автоматически!
-    Optional<Transaction> findByFromAccount(Account account);
-    Optional<Transaction> findByToAccount(Account account);
+    // у счёта много операций - для выписки используется StatementService (постранично)
+    List<Transaction> findByFromAccount(Account account);
+    List<Transaction> findByToAccount(Account account);
 }
@@ -1,9 +1,16 @@
 package ture.app.repository;
 
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import ture.app.dto.UserDTO;
 import ture.app.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 // Создаем интерфейс UserRepository, который будет отвечать за операции с базой данных.
@@ -14,6 +21,15 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     // Эти методы Spring реализует автоматически!
+    // Результат запроса кэшируется (кэш запросов Hibernate): сбрасывается при изменении users на этом узле,
+    // изменение на другом узле видно по истечении срока региона результатов (application.conf)
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     Optional<User> findByName(String name);
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
     Optional<User> findByEmail(String email);
+
+    // страница пользователей после указанного id (keyset), сразу в DTO без загрузки сущностей и счетов
+    @Query("SELECT new ture.app.dto.UserDTO(u.id, u.name, u.email, u.createdAt) " +
+           "FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<UserDTO> findPageAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
@@ -3,8 +3,16 @@ package ture.app.service;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ture.app.cache.AccountCache;
+import ture.app.cache.RecentWrites;
 import ture.app.entity.Account;
+import ture.app.money.Money;
+import ture.app.native_sql.AccountBucketsSql;
+import ture.app.native_sql.LedgerSql;
+import ture.app.native_sql.UsersSql;
 import ture.app.repository.AccountRepository;
 import ture.app.repository.UserRepository;
 
@@ -25,32 +33,91 @@ public class AccountService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private AccountBucketsSql accountBucketsSql;
+
+    @Autowired
+    private ShardedAccounts shardedAccounts;
+
+    @Autowired
+    private UsersSql usersSql;
+
+    @Autowired
+    private AccountCache accountCache;
+
+    @Autowired
+    private LedgerSql ledgerSql;
+
+    @Autowired
+    private RecentWrites recentWrites;
+
+    @Value("${app.transfer.mode:jpa}")
+    private TransferMode transferMode;
+
     // добавление счёта
     public Account create(Long userId, String name) {
-        logger.info(String.format("Creating account for user %s '%s'", userId, name));
+        logger.info("Creating account for user {} '{}'", userId, name);
         var usr = userRepository.findById(userId);
         if(usr.isEmpty()) throw new RuntimeException("User not found");
 
         var account = new Account(usr.get(), name);
-        return accountRepository.save(account);
+        account = accountRepository.save(account);
+        recentWrites.user(userId);
+        return account;
     }
-    // получение счета по ID
+    // получение счета по ID (с реплики, если она включена)
+    @Transactional(readOnly = true)
     public Optional<Account> getById(Long id) {
-        logger.info(String.format("Retrieving account with id '%s'", id));
-        return accountRepository.findById(id);
+        logger.info("Retrieving account with id '{}'", id);
+        return recentWrites.readAccount(id, () -> accountRepository.findById(id));
+    }
+    // проверка, что счёт существует и принадлежит пользователю
+    public void checkOwner(Long usrId, Long accountId) {
+        var account = accountRepository.findById(accountId);
+        if(account.isEmpty()) throw new RuntimeException("Account not found");
+        if(!account.get().getUser().getId().equals(usrId)) throw new RuntimeException("Account is not your");
+    }
+    // сведения о счёте без остатка (из кэша)
+    public Optional<UsersSql.AccountMeta> getMeta(Long id) {
+        return accountCache.getMeta(id, usersSql::findAccountMeta);
     }
-    // получение остатка по счёту
+    // получение остатка по счёту (с учётом корзин горячего счёта или журнала проводок, из кэша или с реплики)
+    @Transactional(readOnly = true)
     public String getAmount(Long accountId) {
-        logger.info(String.format("Getting amount for account with id '%s'", accountId));
+        logger.info("Getting amount for account with id '{}'", accountId);
+        var amount = recentWrites.readAccount(accountId, () -> transferMode == TransferMode.LEDGER
+                ? accountCache.getBalance(accountId, ledgerSql::balance)
+                : accountCache.getBalance(accountId, accountBucketsSql::balance));
+        if(amount == null) throw new RuntimeException("Account not found");
+        return Money.format(amount);
+    }
+    // назначение счёта горячим: остаток делится на корзины, зачисления идут в корзины
+    @Transactional
+    public Boolean setBuckets(Long usrId,
+                              Long accountId,
+                              Integer buckets) {
+        logger.info("Setting {} buckets for account with id '{}'", buckets, accountId);
+        if(buckets == null || buckets < 0) throw new RuntimeException("Buckets must not be negative");
+        // в журнале проводок зачисления не блокируют счёт - корзины не нужны, а слитое из них в accounts.amount
+        // потерялось бы: при наличии снимка accounts.amount не читается и перезаписывается следующим снимком
+        if(transferMode == TransferMode.LEDGER) throw new RuntimeException("Buckets are not supported in ledger mode");
         var account = accountRepository.findById(accountId);
         if(account.isEmpty()) throw new RuntimeException("Account not found");
-        return String.format("%.2f", account.get().getAmount()/100.0);
+        if(!account.get().getUser().getId().equals(usrId)) throw new RuntimeException("Account is not your");
+
+        accountBucketsSql.shard(accountId, buckets);
+        // без корзин зачисления идут в строку счёта - переносим остаток корзин туда же
+        if(buckets == 0)
+            accountBucketsSql.drainInto(accountId);
+        shardedAccounts.put(accountId, buckets);
+        recentWrites.accounts(accountId);
+        return true;
     }
     // изменение наименования
     public Boolean setAccountName(Long usrId,
                                   Long accountId,
                                   String name) {
-        logger.info(String.format("Updating account`s name with id '%s' to '%s'", accountId, name));
+        logger.info("Updating account`s name with id '{}' to '{}'", accountId, name);
         var account = accountRepository.findById(accountId);
         if(account.isEmpty()) throw new RuntimeException("Account not found");
 
@@ -58,6 +125,7 @@ public class AccountService {
         if(acc.getUser().getId().equals(usrId)) acc.setName(name);
         else throw new RuntimeException("Account is not your");
         accountRepository.save(acc);
+        recentWrites.accounts(accountId);
         return true;
     }
 }
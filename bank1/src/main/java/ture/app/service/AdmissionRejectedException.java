@@ -0,0 +1,22 @@
+package ture.app.service;
+
+// Платёж отклонён до выполнения: по счёту уже принято предельное число платежей (PaymentAdmission).
+// Повтор через retryAfterSeconds имеет смысл: REST отвечает 429 с Retry-After, gRPC - RESOURCE_EXHAUSTED.
+public class AdmissionRejectedException extends RuntimeException {
+    private final long accountId;
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(long accountId, long retryAfterSeconds) {
+        super("Too many concurrent payments for account " + accountId);
+        this.accountId = accountId;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,118 @@
+package ture.app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Объединение одиночных запросов по ключу в пакетные (в духе DataLoader).
+// Для чего это нужно:
+// - Запросы, пришедшие в течение короткого окна, выполняются одним пакетным запросом к СУБД
+// - Одинаковые ключи в окне загружаются один раз
+// - Пакет отправляется раньше окончания окна, если набрано maxBatch ключей
+// Отсутствующий в результате пакета ключ завершается значением null.
+public class BatchLoader<K, V> {
+    private final Function<Set<K>, Map<K, V>> batchFunction;
+    private final ScheduledExecutorService executor;
+    private final long windowMs;
+    private final int maxBatch;
+
+    private final DistributionSummary batchSizes;
+    private final Counter requests;
+
+    // ключи, собранные за одно окно
+    private final class Window {
+        final Map<K, CompletableFuture<V>> futures = new HashMap<>();
+        boolean dispatched;
+    }
+
+    // текущее окно (null - запросов нет), доступ под lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private Window pending;
+
+    public BatchLoader(String name,
+                       Function<Set<K>, Map<K, V>> batchFunction,
+                       ScheduledExecutorService executor,
+                       long windowMs,
+                       int maxBatch,
+                       MeterRegistry registry) {
+        this.batchFunction = batchFunction;
+        this.executor = executor;
+        this.windowMs = windowMs;
+        this.maxBatch = maxBatch;
+        this.batchSizes = DistributionSummary.builder("app.loader.batch.size")
+                .description("Число ключей в одном пакетном запросе")
+                .tag("loader", name)
+                .register(registry);
+        this.requests = Counter.builder("app.loader.requests")
+                .description("Одиночные запросы к загрузчику")
+                .tag("loader", name)
+                .register(registry);
+    }
+
+    public CompletableFuture<V> load(K key) {
+        requests.increment();
+        Window full = null;
+        CompletableFuture<V> future;
+        lock.lock();
+        try {
+            if(pending == null) {
+                // первый ключ окна - пакет уйдёт по окончании окна
+                var window = new Window();
+                pending = window;
+                executor.schedule(() -> flush(window), windowMs, TimeUnit.MILLISECONDS);
+            }
+            future = pending.futures.get(key);
+            if(future != null)
+                return future;
+            future = new CompletableFuture<>();
+            pending.futures.put(key, future);
+            if(pending.futures.size() >= maxBatch) {
+                full = pending;
+                full.dispatched = true;
+                pending = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if(full != null) {
+            var window = full;
+            executor.execute(() -> dispatch(window));
+        }
+        return future;
+    }
+
+    // отправка окна по таймеру (если оно не ушло раньше при наборе maxBatch)
+    private void flush(Window window) {
+        lock.lock();
+        try {
+            if(window.dispatched)
+                return;
+            window.dispatched = true;
+            if(pending == window)
+                pending = null;
+        } finally {
+            lock.unlock();
+        }
+        dispatch(window);
+    }
+
+    private void dispatch(Window window) {
+        batchSizes.record(window.futures.size());
+        try {
+            var values = batchFunction.apply(new HashSet<>(window.futures.keySet()));
+            window.futures.forEach((key, future) -> future.complete(values.get(key)));
+        } catch (RuntimeException e) {
+            window.futures.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package ture.app.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ture.app.cache.RecentWrites;
+import ture.app.native_sql.AccountBucketsSql;
+import ture.app.native_sql.BatchTransferSql;
+import ture.app.native_sql.LedgerSql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Создаем класс BatchTransactionService для пакетных переводов (клиринг, ночные расчёты).
+// Для чего это нужно:
+// - Переводы выполняются группами: одна транзакция СУБД на группу вместо одной на перевод
+// - Все счета группы блокируются одним запросом в порядке возрастания id (без взаимоблокировок)
+// - Остатки и операции пишутся JDBC batch-запросами
+// - Ошибка одного перевода не отменяет остальные: результат возвращается по каждому элементу
+// - Результаты по ключам идемпотентности пишутся в транзакции группы, ключи отказов освобождаются
+// - В журнале проводок группа берёт advisory-блокировки своих счетов и пишет проводки batch-запросом
+@Service
+public class BatchTransactionService {
+    private static final Logger logger = LogManager.getLogger(BatchTransactionService.class);
+
+    @Autowired
+    private BatchTransferSql batchTransferSql;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private LedgerSql ledgerSql;
+
+    @Autowired
+    private AccountBucketsSql accountBucketsSql;
+
+    @Autowired
+    private PaymentKeys paymentKeys;
+
+    @Autowired
+    private RecentWrites recentWrites;
+
+    @Value("${app.transfer.mode:jpa}")
+    private TransferMode transferMode;
+
+    // количество переводов в одной транзакции СУБД
+    @Value("${app.transfer.batch-size:500}")
+    private int batchSize;
+
+    // пакетный перевод, результаты в порядке запроса
+    public List<TransferOutcome> createBatch(List<TransferCommand> commands) {
+        logger.info("Creating batch of {} transactions", commands.size());
+        var outcomes = createChunks(commands);
+        // изменённые счета читаются из основной СУБД, пока реплика их не догонит
+        for (int i = 0; i < outcomes.size(); i++) {
+            if(outcomes.get(i).isCompleted())
+                recentWrites.accounts(commands.get(i).fromAccID(), commands.get(i).toAccID());
+        }
+        return outcomes;
+    }
+
+    private List<TransferOutcome> createChunks(List<TransferCommand> commands) {
+        var template = new TransactionTemplate(transactionManager);
+        var outcomes = new ArrayList<TransferOutcome>(commands.size());
+        for (int start = 0; start < commands.size(); start += batchSize) {
+            var chunk = commands.subList(start, Math.min(start + batchSize, commands.size()));
+            try {
+                outcomes.addAll(template.execute(status -> {
+                    var chunkOutcomes = transferMode == TransferMode.LEDGER ? createLedgerChunk(chunk) : createChunk(chunk);
+                    paymentKeys.recordAll(chunk, chunkOutcomes);
+                    return chunkOutcomes;
+                }));
+            } catch (RuntimeException e) {
+                // группа откатилась целиком - ни один её перевод не выполнен
+                logger.error("Batch chunk of {} transactions failed: {}", chunk.size(), e.getMessage());
+                paymentKeys.releaseAll(chunk);
+                for (int i = 0; i < chunk.size(); i++)
+                    outcomes.add(TransferOutcome.failed(e.getMessage()));
+            }
+        }
+        return outcomes;
+    }
+
+    // одна группа переводов в рамках одной транзакции СУБД
+    private List<TransferOutcome> createChunk(List<TransferCommand> chunk) {
+        //блокируем все счета группы
+        var accounts = batchTransferSql.lockAccounts(accountIds(chunk));
+
+        //применяем переводы по порядку к остаткам в памяти
+        var applied = applyChunk(chunk, accounts, true);
+
+        //пишем остатки и лог операций
+        batchTransferSql.updateAmounts(accounts.values());
+        var inserted = batchTransferSql.insertTransactions(applied.rows());
+        return applied.complete(inserted);
+    }
+
+    // группа переводов в журнале проводок: строки счетов не изменяются, одна транзакция СУБД на группу
+    private List<TransferOutcome> createLedgerChunk(List<TransferCommand> chunk) {
+        //блокируем счета группы: списание - исключительно, зачисление - разделяемо
+        var ids = accountIds(chunk);
+        var debit = new TreeSet<Long>();
+        for (var command : chunk) {
+            if(command.fromAccID() != null) debit.add(command.fromAccID());
+        }
+        ledgerSql.lockAccounts(ids, debit);
+        var accounts = ledgerSql.readAccounts(ids);
+
+        //применяем переводы по порядку к остаткам по журналу
+        var applied = applyChunk(chunk, accounts, false);
+
+        //пишем операции и их проводки
+        var inserted = batchTransferSql.insertTransactions(applied.rows());
+        ledgerSql.insertPostings(applied.rows(), inserted);
+        return applied.complete(inserted);
+    }
+
+    private static Set<Long> accountIds(List<TransferCommand> chunk) {
+        var ids = new TreeSet<Long>();
+        for (var command : chunk) {
+            if(command.fromAccID() != null) ids.add(command.fromAccID());
+            if(command.toAccID() != null) ids.add(command.toAccID());
+        }
+        return ids;
+    }
+
+    // переводы группы, применённые к остаткам в памяти: отказы уже записаны, строки ждут записи
+    private record Applied(TransferOutcome[] outcomes, List<Integer> indexes, List<BatchTransferSql.Row> rows) {
+        List<TransferOutcome> complete(List<BatchTransferSql.Inserted> inserted) {
+            for (int k = 0; k < inserted.size(); k++) {
+                var tran = inserted.get(k);
+                outcomes[indexes.get(k)] = TransferOutcome.completed(tran.id(), tran.createdAt());
+            }
+            return Arrays.asList(outcomes);
+        }
+    }
+
+    // drain - сливать корзины при нехватке основной части (остаток по журналу уже включает корзины)
+    private Applied applyChunk(List<TransferCommand> chunk, Map<Long, BatchTransferSql.AccountState> accounts,
+                               boolean drain) {
+        var outcomes = new TransferOutcome[chunk.size()];
+        var applied = new ArrayList<Integer>(chunk.size());
+        var rows = new ArrayList<BatchTransferSql.Row>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            var command = chunk.get(i);
+            var error = apply(command, accounts, drain);
+            if(error != null) {
+                outcomes[i] = TransferOutcome.failed(error);
+            } else {
+                applied.add(i);
+                rows.add(new BatchTransferSql.Row(command.fromAccID(), command.toAccID(), command.amount()));
+            }
+        }
+        return new Applied(outcomes, applied, rows);
+    }
+
+    // проверки в том же порядке и с теми же сообщениями, что и в JpaTransferService
+    private String apply(TransferCommand command, Map<Long, BatchTransferSql.AccountState> accounts, boolean drain) {
+        var amount = command.amount();
+        if(amount == null || amount <= 0)
+            return "Amount must be greater than zero";
+        var from_acc = accounts.get(command.fromAccID());
+        var to_acc = accounts.get(command.toAccID());
+        if(from_acc == null)
+            return "From Account cannot be null";
+        if(to_acc == null)
+            return "To Account cannot be null";
+        if(from_acc.isBlocked())
+            return "From Account is blocked";
+        if(from_acc.isClosed())
+            return "From Account is closed";
+        if(to_acc.isClosed())
+            return "To Account is closed";
+        //при нехватке основной части сливаем корзины (строка счёта заблокирована)
+        if(from_acc.getAmount() < amount && drain)
+            from_acc.addAmount(accountBucketsSql.drain(from_acc.getId()));
+        if(from_acc.getAmount() < amount)
+            return "From Amount must be greater than amount";
+
+        from_acc.addAmount(-amount);
+        to_acc.addAmount(amount);
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+package ture.app.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ture.app.aop.Locked;
+import ture.app.aop.LockedId;
+import ture.app.entity.Account;
+import ture.app.entity.Transaction;
+import ture.app.native_sql.AccountBucketsSql;
+import ture.app.repository.TransactionRepository;
+
+// Создаем класс JpaTransferService - перевод через JPA (режим app.transfer.mode=jpa).
+// Для чего это нужно:
+// - Advisory-блокировки счетов берутся декларативно (@Locked) внутри транзакции
+// - Строки счетов читаются с блокировкой (FOR UPDATE) в порядке возрастания id -
+//   так же, как в TransferSql и BatchTransferSql
+// - Изменённые счета сохраняются при flush, без отдельных save
+@Service
+public class JpaTransferService {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private AccountBucketsSql accountBucketsSql;
+
+    // отметки фаз перевода (app.transfer.phase)
+    @Autowired
+    private TransferPhases transferPhases;
+
+    // перевод по id: блокировка до загрузки, счета читаются сразу под блокировкой
+    @Transactional
+    @Locked
+    public Transaction transfer(@LockedId(Account.LOCK_CLASS_ID) Long fromAccID,
+                                @LockedId(Account.LOCK_CLASS_ID) Long toAccID,
+                                Long amount) {
+        var firstId = Math.min(fromAccID, toAccID);
+        var secondId = Math.max(fromAccID, toAccID);
+        var first = entityManager.find(Account.class, firstId, LockModeType.PESSIMISTIC_WRITE);
+        var second = entityManager.find(Account.class, secondId, LockModeType.PESSIMISTIC_WRITE);
+
+        transferPhases.mark(TransferPhases.Phase.LOCK);
+
+        var from_acc = fromAccID.equals(firstId) ? first : second;
+        var to_acc = toAccID.equals(firstId) ? first : second;
+        if(from_acc == null)
+            throw new RuntimeException("From Account cannot be null");
+        if(to_acc == null)
+            throw new RuntimeException("To Account cannot be null");
+
+        return apply(from_acc, to_acc, amount);
+    }
+
+    // перевод по уже загруженным счетам: блокировка по сущностям и перечитывание из СУБД
+    @Transactional
+    @Locked
+    public Transaction transfer(Account from_acc, Account to_acc, Long amount) {
+        var first = from_acc.getId() <= to_acc.getId() ? from_acc : to_acc;
+        var second = first == from_acc ? to_acc : from_acc;
+        entityManager.refresh(first, LockModeType.PESSIMISTIC_WRITE);
+        entityManager.refresh(second, LockModeType.PESSIMISTIC_WRITE);
+        transferPhases.mark(TransferPhases.Phase.LOCK);
+
+        return apply(from_acc, to_acc, amount);
+    }
+
+    private Transaction apply(Account from_acc, Account to_acc, Long amount) {
+        //проверки
+        if(from_acc.getBlockedAt() != null)
+            throw new RuntimeException("From Account is blocked");
+        if(from_acc.getClosedAt() != null)
+            throw new RuntimeException("From Account is closed");
+        if(to_acc.getClosedAt() != null)
+            throw new RuntimeException("To Account is closed");
+
+        //при нехватке основной части сливаем корзины (если они есть)
+        if(from_acc.getAmount() < amount)
+            from_acc.addAmount(accountBucketsSql.drain(from_acc.getId()));
+
+        //меняем источник
+        from_acc.addAmount(-amount);
+        if(from_acc.getAmount() < 0)
+            throw new RuntimeException("From Amount must be greater than amount");
+
+        //меняем приёмник
+        to_acc.addAmount(amount);
+        transferPhases.mark(TransferPhases.Phase.VALIDATE);
+
+        //пишем лог операций
+        var transaction = new Transaction(from_acc, to_acc, amount);
+        transaction = transactionRepository.save(transaction);
+
+        // Обновляем объект из БД, чтобы получить created_at
+        entityManager.refresh(transaction);
+
+        return transaction;
+    }
+}
@@ -0,0 +1,57 @@
+package ture.app.service;
+
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ture.app.native_sql.LedgerSql;
+
+// Периодические снимки остатков журнала проводок (режим app.transfer.mode=ledger).
+// Снимаются счета с проводками после прошлого прохода, каждый - в своей короткой транзакции.
+// Проводка, зафиксированная позже прохода с меньшим id, в снимок не попадёт до следующего снимка
+// этого счёта - остаток от этого не меняется (он всегда считается от снимка по id проводок).
+@Component
+public class LedgerSnapshots {
+    private static final Logger logger = LogManager.getLogger(LedgerSnapshots.class);
+
+    @Autowired
+    private LedgerSql ledgerSql;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.transfer.mode:jpa}")
+    private TransferMode transferMode;
+
+    // проводки до этого id уже просмотрены
+    private long watermark;
+
+    @PostConstruct
+    public void start() {
+        if(transferMode == TransferMode.LEDGER)
+            watermark = ledgerSql.lastSnapshotPostingId();
+    }
+
+    @Scheduled(initialDelayString = "${app.ledger.snapshot.interval-ms:10000}",
+               fixedDelayString = "${app.ledger.snapshot.interval-ms:10000}")
+    public void snapshot() {
+        if(transferMode != TransferMode.LEDGER)
+            return;
+        var template = new TransactionTemplate(transactionManager);
+        var upTo = ledgerSql.maxPostingId();
+        if(upTo <= watermark)
+            return;
+        int snapshots = 0;
+        for (var accountId : ledgerSql.changedAccounts(watermark)) {
+            if(Boolean.TRUE.equals(template.execute(status -> ledgerSql.snapshot(accountId))))
+                snapshots++;
+        }
+        watermark = upTo;
+        logger.info("Ledger snapshots: {} accounts up to posting {}", snapshots, upTo);
+    }
+}
@@ -0,0 +1,50 @@
+package ture.app.service;
+
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ture.app.native_sql.LedgerSql;
+import ture.app.native_sql.TransferSql;
+
+// Создаем класс LedgerTransferService - перевод в журнале проводок (режим app.transfer.mode=ledger).
+// Для чего это нужно:
+// - Перевод добавляет операцию и две проводки, строки счетов не изменяются и не блокируются
+// - Зачисления на популярный счёт не ждут друг друга (разделяемая advisory-блокировка),
+//   ждут только списания с одного счёта - им нужен точный остаток
+// - Остатки сворачиваются в снимки фоновой задачей (LedgerSnapshots)
+// В этом режиме accounts.amount - остаток на момент последнего снимка, текущий остаток - LedgerSql.balance.
+@Service
+public class LedgerTransferService {
+    @Autowired
+    private LedgerSql ledgerSql;
+
+    // перевод, toAmount в результате - null (остаток получателя не вычисляется)
+    @Transactional
+    public TransferSql.Result transfer(Long fromAccID, Long toAccID, Long amount) {
+        ledgerSql.lockForTransfer(fromAccID, toAccID);
+        var result = ledgerSql.transfer(fromAccID, toAccID, amount);
+        if(result == null)
+            throw diagnose(fromAccID, toAccID, amount);
+        return result;
+    }
+
+    // причина отказа: те же сообщения и тот же порядок проверок, что и в JpaTransferService
+    private RuntimeException diagnose(Long fromAccID, Long toAccID, Long amount) {
+        var states = ledgerSql.diagnose(fromAccID, toAccID);
+        var from_acc = states.get(fromAccID);
+        var to_acc = states.get(toAccID);
+        if(from_acc == null)
+            return new RuntimeException("From Account cannot be null");
+        if(to_acc == null)
+            return new RuntimeException("To Account cannot be null");
+        if(from_acc.blocked())
+            return new RuntimeException("From Account is blocked");
+        if(from_acc.closed())
+            return new RuntimeException("From Account is closed");
+        if(to_acc.closed())
+            return new RuntimeException("To Account is closed");
+        if(from_acc.balance() < amount)
+            return new RuntimeException("From Amount must be greater than amount");
+        return new RuntimeException("Transfer was not applied");
+    }
+}
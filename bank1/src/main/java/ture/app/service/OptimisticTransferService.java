@@ -0,0 +1,165 @@
+package ture.app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ture.app.entity.Account;
+import ture.app.entity.Transaction;
+import ture.app.native_sql.AccountBucketsSql;
+import ture.app.repository.TransactionRepository;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+// Создаем класс OptimisticTransferService - перевод без блокировок (режим app.transfer.mode=optimistic).
+// Для чего это нужно:
+// - При низкой конкуренции не тратим round trip'ы на advisory-блокировки и SELECT ... FOR UPDATE
+// - Конфликт обнаруживается по столбцу version при записи счетов (UPDATE ... WHERE version = ?)
+// - При конфликте транзакция повторяется целиком с экспоненциальной задержкой (ограниченное число попыток)
+@Service
+public class OptimisticTransferService {
+    private static final Logger logger = LogManager.getLogger(OptimisticTransferService.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private AccountBucketsSql accountBucketsSql;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // максимальное число попыток
+    @Value("${app.transfer.optimistic.max-attempts:5}")
+    private int maxAttempts;
+
+    // начальная и максимальная задержка между попытками
+    @Value("${app.transfer.optimistic.initial-backoff-ms:5}")
+    private long initialBackoffMs;
+    @Value("${app.transfer.optimistic.max-backoff-ms:200}")
+    private long maxBackoffMs;
+
+    private final Counter conflicts;
+    private final Counter exhausted;
+
+    public OptimisticTransferService(MeterRegistry registry) {
+        this.conflicts = Counter.builder("app.transfer.optimistic.conflicts")
+                .description("Конфликты версий при оптимистичном переводе")
+                .register(registry);
+        this.exhausted = Counter.builder("app.transfer.optimistic.exhausted")
+                .description("Переводы, не выполненные за максимальное число попыток")
+                .register(registry);
+    }
+
+    // перевод по id с повтором транзакции при конфликте версий
+    public Transaction transfer(Long fromAccID, Long toAccID, Long amount) {
+        return transfer(fromAccID, toAccID, amount, null, null, null);
+    }
+
+    // перевод по id, inTransaction выполняется в транзакции удачной попытки (запись в той же транзакции)
+    public Transaction transfer(Long fromAccID, Long toAccID, Long amount, Consumer<Transaction> inTransaction) {
+        return transfer(fromAccID, toAccID, amount, null, null, inTransaction);
+    }
+
+    // перевод по уже загруженным счетам (перечитываются в первой попытке вместо повторной загрузки)
+    public Transaction transfer(Account from_acc, Account to_acc, Long amount) {
+        return transfer(from_acc.getId(), to_acc.getId(), amount, from_acc, to_acc, null);
+    }
+
+    private Transaction transfer(Long fromAccID, Long toAccID, Long amount, Account fromHint, Account toHint,
+                                 Consumer<Transaction> inTransaction) {
+        var template = new TransactionTemplate(transactionManager);
+        long backoff = initialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return template.execute(status -> {
+                    var transaction = attempt(fromAccID, toAccID, amount, fromHint, toHint);
+                    if(inTransaction != null)
+                        inTransaction.accept(transaction);
+                    return transaction;
+                });
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                conflicts.increment();
+                if(attempt >= maxAttempts) {
+                    exhausted.increment();
+                    throw new RuntimeException("Transfer conflict, retry later");
+                }
+                logger.debug("Transfer {} -> {} conflict, attempt {}", fromAccID, toAccID, attempt);
+                sleep(backoff);
+                backoff = Math.min(backoff * 2, maxBackoffMs);
+            }
+        }
+    }
+
+    // одна попытка: чтение без блокировок, проверки, запись с проверкой версий при commit
+    private Transaction attempt(Long fromAccID, Long toAccID, Long amount, Account fromHint, Account toHint) {
+        var from_acc = load(fromAccID, fromHint);
+        var to_acc = load(toAccID, toHint);
+        if(from_acc == null)
+            throw new RuntimeException("From Account cannot be null");
+        if(to_acc == null)
+            throw new RuntimeException("To Account cannot be null");
+
+        //проверки
+        if(from_acc.getBlockedAt() != null)
+            throw new RuntimeException("From Account is blocked");
+        if(from_acc.getClosedAt() != null)
+            throw new RuntimeException("From Account is closed");
+        if(to_acc.getClosedAt() != null)
+            throw new RuntimeException("To Account is closed");
+
+        //при нехватке основной части сливаем корзины (если они есть)
+        if(from_acc.getAmount() < amount)
+            from_acc.addAmount(accountBucketsSql.drain(from_acc.getId()));
+
+        //меняем источник
+        from_acc.addAmount(-amount);
+        if(from_acc.getAmount() < 0)
+            throw new RuntimeException("From Amount must be greater than amount");
+
+        //меняем приёмник
+        to_acc.addAmount(amount);
+
+        //пишем лог операций
+        var transaction = new Transaction(from_acc, to_acc, amount);
+        transaction = transactionRepository.save(transaction);
+
+        // Обновляем объект из БД, чтобы получить created_at
+        entityManager.refresh(transaction);
+
+        return transaction;
+    }
+
+    // счёт, загруженный в текущий EntityManager (open-in-view), перечитываем - иначе find вернёт его старое состояние;
+    // после отката неудачной попытки EntityManager очищен и счёт загружается заново
+    private Account load(Long id, Account hint) {
+        if(hint != null && entityManager.contains(hint)) {
+            entityManager.refresh(hint);
+            return hint;
+        }
+        return entityManager.find(Account.class, id);
+    }
+
+    // задержка со случайным разбросом, чтобы конкурирующие попытки не совпадали повторно
+    private void sleep(long backoff) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Transfer interrupted", e);
+        }
+    }
+}
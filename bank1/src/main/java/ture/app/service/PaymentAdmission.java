@@ -0,0 +1,170 @@
+package ture.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Создаем класс PaymentAdmission - допуск платежей по счетам перед REST и gRPC ProcessPayment.
+// Для чего это нужно:
+// - При всплеске платежей по одному счёту запросы ждут блокировку счёта, занимая потоки Tomcat/gRPC;
+//   когда потоки заканчиваются, по таймауту падают и платежи по другим счетам
+// - Число одновременно принятых платежей по счёту (выполняется + ждут блокировку) ограничено,
+//   сверх предела запрос сразу отклоняется с признаком повтора (AdmissionRejectedException)
+// - Предел подстраивается по времени выполнения (AIMD): укладываемся в target-latency-ms -
+//   предел медленно растёт (+1/предел), превышаем - уменьшается в backoff-ratio раз
+// Состояние заводится на счёт при первом платеже и удаляется после idle-ms без платежей.
+// Очереди ожидания нет намеренно (глубина 0): ожидающий запрос держал бы тот же поток Tomcat/gRPC,
+// который предел и бережёт; очередь - на стороне клиента, повтор через Retry-After.
+// Не покрываются намеренно:
+// - ProcessPaymentBatch / ProcessPaymentStream: группа блокирует счета одним запросом в одной транзакции,
+//   поток занят одной группой, а не платежом - горячий счёт стоит одного ожидания блокировки на группу.
+//   Отказ отдельного элемента пакета клиент не может повторить по Retry-After
+// - Групповая фиксация (app.transfer.journal.enabled): платежи ждут в ограниченной очереди журнала
+//   без потока на платёж, при её переполнении платёж сразу отклоняется
+@Component
+public class PaymentAdmission {
+    private static final Logger logger = LogManager.getLogger(PaymentAdmission.class);
+
+    @Autowired
+    private ShardedAccounts shardedAccounts;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${app.payments.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.payments.admission.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${app.payments.admission.min-limit:2}")
+    private int minLimit;
+
+    @Value("${app.payments.admission.max-limit:100}")
+    private int maxLimit;
+
+    @Value("${app.payments.admission.target-latency-ms:200}")
+    private long targetLatencyMs;
+
+    @Value("${app.payments.admission.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    @Value("${app.payments.admission.retry-after-s:1}")
+    private long retryAfterSeconds;
+
+    @Value("${app.payments.admission.idle-ms:60000}")
+    private long idleMs;
+
+    private Cache<Long, Limiter> limiters;
+    private long targetLatencyNanos;
+    private Counter rejected;
+
+    // принятый платёж, освобождается через close() после выполнения
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final Permit NONE = () -> {};
+
+    @PostConstruct
+    public void start() {
+        limiters = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMillis(idleMs))
+                .build();
+        targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+        rejected = Counter.builder("app.payments.admission.rejected")
+                .description("Платежи, отклонённые из-за предела по счёту")
+                .register(registry);
+        Gauge.builder("app.payments.admission.accounts", this, a -> a.limiters.estimatedSize())
+                .description("Счета с состоянием допуска")
+                .register(registry);
+        Gauge.builder("app.payments.admission.limited", this, PaymentAdmission::limited)
+                .description("Счета, у которых предел снижен относительно начального")
+                .register(registry);
+    }
+
+    // допуск платежа по обоим счетам (зачисления на горячий счёт идут в корзины и не ограничиваются)
+    public Permit acquire(Long fromAccID, Long toAccID) {
+        if(!enabled || fromAccID == null || toAccID == null)
+            return NONE;
+        var from = limiter(fromAccID).acquire(fromAccID);
+        if(fromAccID.equals(toAccID) || shardedAccounts.isSharded(toAccID))
+            return from;
+        try {
+            var to = limiter(toAccID).acquire(toAccID);
+            return () -> {
+                to.close();
+                from.close();
+            };
+        } catch (AdmissionRejectedException e) {
+            from.close();
+            throw e;
+        }
+    }
+
+    private Limiter limiter(Long accountId) {
+        return limiters.get(accountId, id -> new Limiter(initialLimit));
+    }
+
+    private double limited() {
+        return limiters.asMap().values().stream().filter(l -> l.limit() < initialLimit).count();
+    }
+
+    // предел и принятые платежи одного счёта
+    private class Limiter {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // предел дробный (рост на 1/предел), хранится битами double
+        private final AtomicLong limitBits;
+
+        Limiter(double limit) {
+            this.limitBits = new AtomicLong(Double.doubleToLongBits(limit));
+        }
+
+        double limit() {
+            return Double.longBitsToDouble(limitBits.get());
+        }
+
+        Permit acquire(long accountId) {
+            var limit = (int) limit();
+            while (true) {
+                var current = inFlight.get();
+                if(current >= limit) {
+                    rejected.increment();
+                    if(logger.isDebugEnabled())
+                        logger.debug("Payment rejected for account {}: {} in flight, limit {}", accountId, current, limit);
+                    throw new AdmissionRejectedException(accountId, retryAfterSeconds);
+                }
+                if(inFlight.compareAndSet(current, current + 1))
+                    break;
+            }
+            var start = System.nanoTime();
+            return () -> release(System.nanoTime() - start);
+        }
+
+        private void release(long latencyNanos) {
+            inFlight.decrementAndGet();
+            var overloaded = latencyNanos > targetLatencyNanos;
+            limitBits.updateAndGet(bits -> {
+                var limit = Double.longBitsToDouble(bits);
+                var next = overloaded
+                        ? Math.max(minLimit, limit * backoffRatio)
+                        : Math.min(maxLimit, limit + 1.0 / limit);
+                return Double.doubleToLongBits(next);
+            });
+        }
+    }
+}
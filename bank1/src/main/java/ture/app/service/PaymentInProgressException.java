@@ -0,0 +1,10 @@
+package ture.app.service;
+
+// Платёж с этим ключом идемпотентности выполняется другим запросом (или уже выполнен им, пока шёл этот).
+// Повтор имеет смысл: получит исходный результат или, после срока аренды ключа, выполнит платёж сам.
+// REST отвечает 409.
+public class PaymentInProgressException extends RuntimeException {
+    public PaymentInProgressException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,194 @@
+package ture.app.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Создаем класс PaymentJournal - приём платежей с групповой фиксацией (group commit).
+// Для чего это нужно:
+// - Платежи от REST и gRPC ставятся в ограниченную очередь в памяти
+// - Один поток-писатель забирает их пачками и выполняет через BatchTransactionService:
+//   сотни переводов на одну транзакцию СУБД (и один fsync), запись JDBC batch-запросами
+// - Вызывающий получает результат (CompletableFuture) только после commit - надёжность не снижается
+// - При переполнении очереди платёж сразу отклоняется
+// - Ключи идемпотентности платежей пишутся в транзакции пачки, ключи отклонённых - освобождаются
+@Service
+public class PaymentJournal {
+    private static final Logger logger = LogManager.getLogger(PaymentJournal.class);
+
+    @Autowired
+    private BatchTransactionService batchTransactionService;
+
+    @Autowired
+    private PaymentKeys paymentKeys;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${app.transfer.journal.enabled:false}")
+    private boolean enabled;
+
+    // ёмкость очереди
+    @Value("${app.transfer.journal.capacity:10000}")
+    private int capacity;
+
+    // максимальное число платежей в одной фиксации
+    @Value("${app.transfer.journal.max-batch:500}")
+    private int maxBatch;
+
+    // ожидание добора пачки после первого платежа
+    @Value("${app.transfer.journal.linger-ms:2}")
+    private long lingerMs;
+
+    // платёж в очереди
+    private record Entry(TransferCommand command, CompletableFuture<TransferOutcome> future) {}
+
+    private BlockingQueue<Entry> queue;
+    private Thread writer;
+    private volatile boolean running;
+    // постановка в очередь (read) и остановка (write): после остановки в очередь ничего не попадёт
+    private final ReentrantReadWriteLock accepting = new ReentrantReadWriteLock();
+    private DistributionSummary batchSizes;
+
+    @PostConstruct
+    public void start() {
+        if(!enabled)
+            return;
+        queue = new ArrayBlockingQueue<>(capacity);
+        batchSizes = DistributionSummary.builder("app.transfer.journal.batch.size")
+                .description("Число платежей в одной групповой фиксации")
+                .register(registry);
+        Gauge.builder("app.transfer.journal.queued", queue, BlockingQueue::size)
+                .description("Платежи в очереди на запись")
+                .register(registry);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "payment-journal-writer");
+        writer.start();
+        logger.info("Payment journal started: capacity {}, max batch {}", capacity, maxBatch);
+    }
+
+    // остановка: новые платежи не принимаются, очередь дописывается;
+    // оставшиеся (писатель прерван или завершился с ошибкой) отклоняются - вызывающие не ждут вечно
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if(writer == null)
+            return;
+        accepting.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            accepting.writeLock().unlock();
+        }
+        writer.join();
+        failQueued();
+        logger.info("Payment journal stopped");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // постановка платежа в очередь, результат - после фиксации в СУБД
+    public CompletableFuture<TransferOutcome> submit(TransferCommand command) {
+        var future = new CompletableFuture<TransferOutcome>();
+        if(command.amount() == null || command.amount() <= 0) {
+            paymentKeys.releaseAll(List.of(command));
+            future.complete(TransferOutcome.failed("Amount must be greater than zero"));
+            return future;
+        }
+        boolean queued;
+        accepting.readLock().lock();
+        try {
+            queued = running && queue.offer(new Entry(command, future));
+        } finally {
+            accepting.readLock().unlock();
+        }
+        if(!queued) {
+            paymentKeys.releaseAll(List.of(command));
+            future.completeExceptionally(new RuntimeException("Payment queue is full"));
+        }
+        return future;
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<Entry>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null)
+                    continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - batch.size());
+                if(batch.size() < maxBatch && lingerMs > 0) {
+                    var next = queue.poll(lingerMs, TimeUnit.MILLISECONDS);
+                    if(next != null) {
+                        batch.add(next);
+                        queue.drainTo(batch, maxBatch - batch.size());
+                    }
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                // прерывание - выход: со взведённым флагом poll сразу бросал бы исключение снова.
+                // Набранная пачка и очередь отклоняются (здесь и в stop)
+                Thread.currentThread().interrupt();
+                fail(batch, "Payment journal is stopped");
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        failQueued();
+    }
+
+    // отклонение платежей, оставшихся в очереди после остановки писателя
+    private void failQueued() {
+        var rest = new ArrayList<Entry>();
+        queue.drainTo(rest);
+        if(rest.isEmpty())
+            return;
+        logger.warn("Payment journal rejected {} queued payments on stop", rest.size());
+        fail(rest, "Payment journal is stopped");
+    }
+
+    private void fail(List<Entry> entries, String message) {
+        if(entries.isEmpty())
+            return;
+        paymentKeys.releaseAll(entries.stream().map(Entry::command).toList());
+        var e = new RuntimeException(message);
+        for (var entry : entries)
+            entry.future().completeExceptionally(e);
+    }
+
+    private void write(List<Entry> batch) {
+        batchSizes.record(batch.size());
+        var commands = new ArrayList<TransferCommand>(batch.size());
+        for (var entry : batch)
+            commands.add(entry.command());
+        try {
+            var outcomes = batchTransactionService.createBatch(commands);
+            for (int i = 0; i < batch.size(); i++)
+                batch.get(i).future().complete(outcomes.get(i));
+        } catch (RuntimeException e) {
+            logger.error("Payment journal batch of {} failed: {}", batch.size(), e.getMessage());
+            paymentKeys.releaseAll(commands);
+            for (var entry : batch)
+                entry.future().completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package ture.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ture.app.native_sql.PaymentKeysSql;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Создаем класс PaymentKeys - идемпотентность платежей REST и gRPC.
+// Для чего это нужно:
+// - Клиент может повторять платёж после таймаута с тем же ключом, не боясь двойного перевода
+// - Перед переводом ключ занимается в таблице payment_keys (уникальный индекс), результат пишется
+//   в той же транзакции СУБД, что и перевод: после commit ключ выполнен, после отката - занят без результата
+// - Повтор с тем же ключом получает исходный результат без повторного выполнения
+// - Недавние выполненные ключи держатся в памяти: повтор не идёт в СУБД
+// - Занятый ключ арендуется на lease-seconds: если процесс завершился до commit перевода, повтор после срока
+//   аренды занимает ключ заново. Результат пишется только в ключ без результата, иначе транзакция перевода
+//   откатывается - из двух запросов, занявших ключ, перевод выполнит только один
+// - Повтор, пока ключ занят другим запросом, - PaymentInProgressException (REST - 409)
+// Ключ неуспешного перевода освобождается - перевод не выполнен, повтор выполнит его заново
+// (одиночный перевод - вызывающим через release, пакет - BatchTransactionService в транзакции группы).
+// Пустой ключ (null или "") - платёж без идемпотентности, все методы ничего не делают.
+@Service
+public class PaymentKeys {
+    private static final Logger logger = LogManager.getLogger(PaymentKeys.class);
+
+    // длина столбца payment_keys.idempotency_key
+    private static final int MAX_KEY_LENGTH = 128;
+
+    @Autowired
+    private PaymentKeysSql paymentKeysSql;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${app.payments.idempotency.cache.max-size:100000}")
+    private long cacheMaxSize;
+
+    @Value("${app.payments.idempotency.cache.ttl-ms:600000}")
+    private long cacheTtlMs;
+
+    // сколько хранится ключ (повтор позже выполнит платёж заново)
+    @Value("${app.payments.idempotency.retention-hours:24}")
+    private long retentionHours;
+
+    // срок аренды занятого ключа: больше самого долгого перевода, иначе повтор займёт ключ выполняющегося платежа
+    // (и один из них откатится при записи результата)
+    @Value("${app.payments.idempotency.lease-seconds:60}")
+    private long leaseSeconds;
+
+    // выполненные платежи по ключу (результат не меняется, поэтому кэш не требует сброса)
+    private Cache<String, PaymentKeysSql.Stored> recent;
+
+    @PostConstruct
+    public void start() {
+        recent = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofMillis(cacheTtlMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, recent, "payments.keys");
+    }
+
+    // Занятие ключа перед переводом.
+    // Пустой результат - ключ занят этим вызовом: перевод нужно выполнить и записать результат через record.
+    // Иначе - результат исходного платежа (перевод выполнять не нужно).
+    public Optional<TransferOutcome> claim(String key, TransferCommand command) {
+        if(isEmpty(key))
+            return Optional.empty();
+        if(key.length() > MAX_KEY_LENGTH)
+            throw new RuntimeException(String.format("Idempotency key must be at most %s characters", MAX_KEY_LENGTH));
+
+        var cached = recent.getIfPresent(key);
+        if(cached != null)
+            return Optional.of(toOutcome(cached, command));
+
+        // вторая попытка - если ключ освободили между INSERT и SELECT
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if(paymentKeysSql.insert(key, command.fromAccID(), command.toAccID(), command.amount()))
+                return Optional.empty();
+            if(paymentKeysSql.reclaim(key, command.fromAccID(), command.toAccID(), command.amount(), leaseSeconds)) {
+                logger.warn("Payment key {} reclaimed after lease of {} s expired", key, leaseSeconds);
+                return Optional.empty();
+            }
+            var stored = paymentKeysSql.find(key);
+            if(stored.isEmpty())
+                continue;
+            if(!stored.get().isCompleted()) {
+                checkSame(stored.get(), command);
+                throw new PaymentInProgressException("Payment with this idempotency key is in progress");
+            }
+            recent.put(key, stored.get());
+            logger.info("Payment {} is a repeat of transaction {}", key, stored.get().transactionId());
+            return Optional.of(toOutcome(stored.get(), command));
+        }
+        throw new PaymentInProgressException("Payment with this idempotency key is in progress");
+    }
+
+    // результат перевода по занятому ключу (command.idempotencyKey) - в транзакции перевода
+    public void record(TransferCommand command, Long transactionId, LocalDateTime createdAt) {
+        var key = command.idempotencyKey();
+        if(isEmpty(key))
+            return;
+        if(!paymentKeysSql.complete(key, transactionId, createdAt))
+            throw completedElsewhere(List.of(key));
+        remember(List.of(new Remembered(command, transactionId, createdAt)));
+    }
+
+    // результаты группы переводов - в транзакции группы: выполненные сохраняются, ключи отказов освобождаются
+    public void recordAll(List<TransferCommand> commands, List<TransferOutcome> outcomes) {
+        var completed = new ArrayList<PaymentKeysSql.Completed>();
+        var remembered = new ArrayList<Remembered>();
+        var failed = new ArrayList<String>();
+        for (int i = 0; i < commands.size(); i++) {
+            var command = commands.get(i);
+            var outcome = outcomes.get(i);
+            if(isEmpty(command.idempotencyKey()))
+                continue;
+            if(outcome.isCompleted()) {
+                completed.add(new PaymentKeysSql.Completed(command.idempotencyKey(), outcome.id(), outcome.createdAt()));
+                remembered.add(new Remembered(command, outcome.id(), outcome.createdAt()));
+            } else {
+                failed.add(command.idempotencyKey());
+            }
+        }
+        var missed = paymentKeysSql.completeAll(completed);
+        if(!missed.isEmpty())
+            throw completedElsewhere(missed);
+        paymentKeysSql.releaseAll(failed);
+        remember(remembered);
+    }
+
+    // освобождение ключей группы, транзакция которой откатилась
+    public void releaseAll(List<TransferCommand> commands) {
+        var keys = commands.stream().map(TransferCommand::idempotencyKey).filter(key -> !isEmpty(key)).toList();
+        try {
+            paymentKeysSql.releaseAll(keys);
+        } catch (RuntimeException e) {
+            logger.error("{} payment keys were not released: {}", keys.size(), e.getMessage());
+        }
+    }
+
+    // ключ заняли заново после срока аренды (или освободили): перевод этой транзакции должен откатиться
+    private static PaymentInProgressException completedElsewhere(List<String> keys) {
+        logger.warn("Payment keys {} were reclaimed by another request, transfer is rolled back", keys);
+        return new PaymentInProgressException("Payment with this idempotency key was taken over by another request");
+    }
+
+    private record Remembered(TransferCommand command, Long transactionId, LocalDateTime createdAt) {}
+
+    // выполненные платежи попадают в память только после commit (без транзакции - сразу)
+    private void remember(List<Remembered> items) {
+        if(items.isEmpty())
+            return;
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(items);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                put(items);
+            }
+        });
+    }
+
+    private void put(List<Remembered> items) {
+        for (var item : items) {
+            var command = item.command();
+            recent.put(command.idempotencyKey(), new PaymentKeysSql.Stored(
+                    command.fromAccID(), command.toAccID(), command.amount(), item.transactionId(), item.createdAt()));
+        }
+    }
+
+    // освобождение ключа, если перевод завершился исключением
+    public void release(String key) {
+        if(isEmpty(key))
+            return;
+        try {
+            paymentKeysSql.release(key);
+        } catch (RuntimeException e) {
+            // ключ останется занятым до истечения аренды (lease-seconds) - до того повторы получат "in progress"
+            logger.error("Payment key {} was not released: {}", key, e.getMessage());
+        }
+    }
+
+    // удаление ключей старше срока хранения
+    @Scheduled(fixedDelayString = "${app.payments.idempotency.cleanup-ms:3600000}")
+    public void cleanup() {
+        var deleted = paymentKeysSql.deleteOlderThan(LocalDateTime.now().minusHours(retentionHours));
+        if(deleted > 0)
+            logger.info("Deleted {} expired payment keys", deleted);
+    }
+
+    private static boolean isEmpty(String key) {
+        return key == null || key.isEmpty();
+    }
+
+    // повтор должен совпадать с исходным платежом
+    private static void checkSame(PaymentKeysSql.Stored stored, TransferCommand command) {
+        if(!stored.fromAccID().equals(command.fromAccID())
+                || !stored.toAccID().equals(command.toAccID())
+                || !stored.amount().equals(command.amount()))
+            throw new RuntimeException("Idempotency key is already used for another payment");
+    }
+
+    private static TransferOutcome toOutcome(PaymentKeysSql.Stored stored, TransferCommand command) {
+        checkSame(stored, command);
+        return TransferOutcome.completed(stored.transactionId(), stored.createdAt());
+    }
+}
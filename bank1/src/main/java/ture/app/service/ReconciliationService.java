@@ -0,0 +1,230 @@
+package ture.app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ture.app.native_sql.ReconciliationSql;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Создаем класс ReconciliationService - сверка остатков счетов с журналом операций.
+// Для чего это нужно:
+// - Остаток каждого счёта должен равняться сумме зачислений минус сумма списаний в transactions
+// - Пространство id счетов делится на диапазоны, диапазоны сверяются параллельно на ограниченном числе потоков
+// - Диапазон читается в своей read-only транзакции REPEATABLE READ: остатки и операции - из одного снимка
+//   данных, блокировки строк не берутся, переводы продолжают работать; транзакции короткие и не задерживают vacuum
+// - Расхождения (до max-reported штук) и скорость сверки - в отчёте и метриках app.reconciliation.*
+// - С включённой репликой (app.db.replica.enabled) read-only транзакции сверки читают с неё
+// Счета, пополненные не переводом (например, тестовые данные), тоже попадут в расхождения.
+@Service
+public class ReconciliationService {
+    private static final Logger logger = LogManager.getLogger(ReconciliationService.class);
+
+    @Autowired
+    private ReconciliationSql reconciliationSql;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${app.transfer.mode:jpa}")
+    private TransferMode transferMode;
+
+    // число счетов (по id) в диапазоне
+    @Value("${app.reconciliation.range-size:100000}")
+    private long rangeSize;
+
+    // потоки сверки (каждый занимает соединение из пула на время диапазона)
+    @Value("${app.reconciliation.threads:4}")
+    private int threads;
+
+    // сколько расхождений сохранять в отчёте (считаются все)
+    @Value("${app.reconciliation.max-reported:1000}")
+    private int maxReported;
+
+    // ограничение времени запроса одного диапазона
+    @Value("${app.reconciliation.range-timeout-ms:600000}")
+    private long rangeTimeoutMs;
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    // расхождение: остаток счёта и сумма операций по нему
+    public record Discrepancy(long accountId, long balance, long net, long difference) {}
+
+    public record Report(Status status,
+                         LocalDateTime startedAt,
+                         LocalDateTime finishedAt,
+                         int ranges,
+                         int failedRanges,
+                         long accounts,
+                         long transactionRows,
+                         long discrepancyCount,
+                         List<Discrepancy> discrepancies,
+                         double rowsPerSecond) {}
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Report lastReport;
+    private final AtomicLong lastDiscrepancies = new AtomicLong();
+
+    private Counter accountsCounter;
+    private Counter rowsCounter;
+    private Timer rangeTimer;
+
+    @PostConstruct
+    public void registerMetrics() {
+        accountsCounter = Counter.builder("app.reconciliation.accounts")
+                .description("Сверенные счета")
+                .register(registry);
+        rowsCounter = Counter.builder("app.reconciliation.transactions")
+                .description("Строки операций, учтённые при сверке")
+                .register(registry);
+        rangeTimer = Timer.builder("app.reconciliation.range")
+                .description("Сверка одного диапазона счетов")
+                .register(registry);
+        Gauge.builder("app.reconciliation.discrepancies", lastDiscrepancies, AtomicLong::get)
+                .description("Расхождения в последней сверке")
+                .register(registry);
+    }
+
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    // сверка по расписанию (app.reconciliation.cron, по умолчанию выключена)
+    @Scheduled(cron = "${app.reconciliation.cron:-}")
+    public void scheduled() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            logger.error("Scheduled reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    // запуск сверки в фоне
+    public Report start() {
+        if(!running.compareAndSet(false, true))
+            throw new RuntimeException("Reconciliation is already running");
+        var report = new Report(Status.RUNNING, LocalDateTime.now(), null, 0, 0, 0, 0, 0, List.of(), 0);
+        lastReport = report;
+        var thread = new Thread(() -> {
+            try {
+                run(report.startedAt());
+            } finally {
+                running.set(false);
+            }
+        }, "reconciliation");
+        thread.setDaemon(true);
+        thread.start();
+        return report;
+    }
+
+    // сверка в текущем потоке
+    public Report reconcile() {
+        if(!running.compareAndSet(false, true))
+            throw new RuntimeException("Reconciliation is already running");
+        try {
+            return run(LocalDateTime.now());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Report run(LocalDateTime startedAt) {
+        var idRange = reconciliationSql.idRange();
+        var ledger = transferMode == TransferMode.LEDGER;
+        logger.info("Reconciliation started: accounts {}..{}, range size {}, {} threads",
+                idRange.min(), idRange.max(), rangeSize, threads);
+
+        var accounts = new AtomicLong();
+        var rows = new AtomicLong();
+        var discrepancyCount = new AtomicLong();
+        var discrepancies = Collections.synchronizedList(new ArrayList<Discrepancy>());
+        var failed = new AtomicInteger();
+
+        var template = new TransactionTemplate(transactionManager);
+        template.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        template.setReadOnly(true);
+        template.setTimeout((int) Math.max(1, rangeTimeoutMs / 1000));
+
+        var counter = new AtomicInteger();
+        var executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    var thread = new Thread(r, "reconciliation-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        var futures = new ArrayList<Future<?>>();
+        try {
+            for (long from = idRange.min(); from <= idRange.max(); from += rangeSize) {
+                long fromId = from;
+                long toId = Math.min(from + rangeSize - 1, idRange.max());
+                futures.add(executor.submit(() -> rangeTimer.record(() -> template.executeWithoutResult(status ->
+                        reconciliationSql.scan(fromId, toId, ledger, row -> {
+                            accounts.incrementAndGet();
+                            rows.addAndGet(row.moves());
+                            accountsCounter.increment();
+                            rowsCounter.increment(row.moves());
+                            if(row.balance() != row.net()) {
+                                if(discrepancyCount.incrementAndGet() <= maxReported)
+                                    discrepancies.add(new Discrepancy(row.accountId(), row.balance(), row.net(),
+                                                                      row.balance() - row.net()));
+                            }
+                        })))));
+            }
+            for (var future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failed.incrementAndGet();
+                    logger.error("Reconciliation range failed: {}", e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.addAndGet(futures.size());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        var finishedAt = LocalDateTime.now();
+        var seconds = Math.max(1, Duration.between(startedAt, finishedAt).toMillis()) / 1000.0;
+        var report = new Report(failed.get() == 0 ? Status.COMPLETED : Status.FAILED,
+                startedAt, finishedAt,
+                futures.size(), failed.get(),
+                accounts.get(), rows.get(),
+                discrepancyCount.get(), List.copyOf(discrepancies),
+                rows.get() / seconds);
+        lastReport = report;
+        lastDiscrepancies.set(discrepancyCount.get());
+        logger.info("Reconciliation {}: {} accounts, {} transaction rows, {} discrepancies, {} failed ranges in {} s",
+                report.status(), report.accounts(), report.transactionRows(), report.discrepancyCount(),
+                report.failedRanges(), seconds);
+        return report;
+    }
+}
@@ -0,0 +1,53 @@
+package ture.app.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ture.app.native_sql.AccountBucketsSql;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Справочник "горячих" счетов с корзинами остатка (id -> число корзин).
+// Перечитывается периодически, чтобы узлы узнавали о новых горячих счетах.
+// Устаревший справочник не нарушает остатки: сумма корзин входит в остаток, а при нехватке основной части
+// любой путь списания сливает корзины независимо от справочника. Справочник влияет только на то,
+// куда идут зачисления.
+@Component
+public class ShardedAccounts {
+    @Autowired
+    private AccountBucketsSql accountBucketsSql;
+
+    private volatile Map<Long, Integer> buckets = Map.of();
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.accounts.sharded.refresh-ms:30000}")
+    public void refresh() {
+        buckets = Map.copyOf(accountBucketsSql.findSharded());
+    }
+
+    public boolean isSharded(Long accountId) {
+        return accountId != null && buckets.containsKey(accountId);
+    }
+
+    // число корзин счёта (0 - счёт не горячий), читается из одного снимка справочника
+    public int bucketCount(Long accountId) {
+        if(accountId == null)
+            return 0;
+        var count = buckets.get(accountId);
+        return count == null ? 0 : count;
+    }
+
+    // случайная корзина для зачисления при известном числе корзин
+    public static int randomBucket(int count) {
+        return ThreadLocalRandom.current().nextInt(count);
+    }
+
+    // отметка счёта как горячего на этом узле (остальные узнают при перечитывании)
+    void put(Long accountId, int count) {
+        var copy = new HashMap<>(buckets);
+        if(count > 0) copy.put(accountId, count);
+        else copy.remove(accountId);
+        buckets = Map.copyOf(copy);
+    }
+}
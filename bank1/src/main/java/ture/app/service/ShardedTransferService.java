@@ -0,0 +1,77 @@
+package ture.app.service;
+
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ture.app.native_sql.AccountBucketsSql;
+import ture.app.native_sql.BatchTransferSql;
+import ture.app.native_sql.TransferSql;
+
+import java.util.List;
+
+// Создаем класс ShardedTransferService - перевод с участием "горячих" счетов (с корзинами остатка).
+// Для чего это нужно:
+// - Зачисление на горячий счёт идёт в случайную корзину: строка счёта не блокируется,
+//   и параллельные зачисления не ждут друг друга
+// - Списание с горячего счёта идёт из основной части, при нехватке корзины сливаются в неё
+// - Порядок блокировок: строки счетов (по возрастанию id), затем корзины - без взаимоблокировок
+@Service
+public class ShardedTransferService {
+    @Autowired
+    private BatchTransferSql batchTransferSql;
+
+    @Autowired
+    private AccountBucketsSql accountBucketsSql;
+
+    @Autowired
+    private ShardedAccounts shardedAccounts;
+
+    // перевод, toAmount в результате - null, если зачисление ушло в корзину
+    @Transactional
+    public TransferSql.Result transfer(Long fromAccID, Long toAccID, Long amount) {
+        // число корзин читаем один раз: справочник может обновиться между проверкой и зачислением
+        var toBuckets = shardedAccounts.bucketCount(toAccID);
+        var toSharded = toBuckets > 0;
+
+        // счёт получателя-горячего счёта читаем без блокировки
+        var accounts = batchTransferSql.lockAccounts(toSharded ? List.of(fromAccID) : List.of(fromAccID, toAccID));
+        var from_acc = accounts.get(fromAccID);
+        var to_acc = accounts.containsKey(toAccID)
+                ? accounts.get(toAccID)
+                : batchTransferSql.readAccounts(List.of(toAccID)).get(toAccID);
+
+        //проверки (те же сообщения, что и в JpaTransferService)
+        if(from_acc == null)
+            throw new RuntimeException("From Account cannot be null");
+        if(to_acc == null)
+            throw new RuntimeException("To Account cannot be null");
+        if(from_acc.isBlocked())
+            throw new RuntimeException("From Account is blocked");
+        if(from_acc.isClosed())
+            throw new RuntimeException("From Account is closed");
+        if(to_acc.isClosed())
+            throw new RuntimeException("To Account is closed");
+
+        //при нехватке основной части сливаем корзины
+        if(from_acc.getAmount() < amount)
+            from_acc.addAmount(accountBucketsSql.drain(fromAccID));
+        if(from_acc.getAmount() < amount)
+            throw new RuntimeException("From Amount must be greater than amount");
+
+        //меняем источник и приёмник
+        from_acc.addAmount(-amount);
+        if(toSharded)
+            accountBucketsSql.credit(toAccID, ShardedAccounts.randomBucket(toBuckets), amount);
+        else
+            to_acc.addAmount(amount);
+        batchTransferSql.updateAmounts(accounts.values());
+
+        //пишем лог операций
+        var tran = batchTransferSql.insertTransactions(
+                List.of(new BatchTransferSql.Row(fromAccID, toAccID, amount))).get(0);
+
+        return new TransferSql.Result(tran.id(), tran.createdAt(),
+                from_acc.getAmount(),
+                toSharded ? null : to_acc.getAmount());
+    }
+}
@@ -0,0 +1,76 @@
+package ture.app.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ture.app.cache.RecentWrites;
+import ture.app.native_sql.StatementSql;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Создаем класс StatementService для выписки по счёту.
+// Для чего это нужно:
+// - Выписка отдаётся страницами с курсором продолжения (keyset), а не через OFFSET:
+//   стоимость страницы не зависит от её номера и глубины истории
+// - Выгрузка всей выписки идёт теми же страницами, в памяти держится только одна страница
+// - Потоковая выгрузка (gRPC StreamStatement) читает выписку одним запросом через курсор СУБД
+@Service
+public class StatementService {
+    private static final Logger logger = LogManager.getLogger(StatementService.class);
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    @Autowired
+    private StatementSql statementSql;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RecentWrites recentWrites;
+
+    // страница выписки и курсор следующей страницы (null - страниц больше нет)
+    public record Page(List<StatementSql.Line> lines, String next) {}
+
+    @Transactional(readOnly = true)
+    public Page getPage(Long accountId, LocalDateTime since, LocalDateTime until, String cursor, Integer limit) {
+        logger.info("Getting statement page for account with id '{}' after '{}'", accountId, cursor);
+        var size = limit == null || limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        var lines = recentWrites.readAccount(accountId,
+                () -> statementSql.page(accountId, since, until, StatementSql.Cursor.parse(cursor), size));
+        var next = lines.size() < size ? null : StatementSql.Cursor.of(lines.get(lines.size() - 1)).toString();
+        return new Page(lines, next);
+    }
+
+    // выгрузка выписки целиком, постранично (строки журнала не меняются, поэтому страницы согласованы)
+    public void export(Long accountId, LocalDateTime since, LocalDateTime until, Consumer<StatementSql.Line> consumer) {
+        logger.info("Exporting statement for account with id '{}'", accountId);
+        StatementSql.Cursor after = null;
+        List<StatementSql.Line> lines;
+        do {
+            lines = statementSql.page(accountId, since, until, after, MAX_PAGE_SIZE);
+            lines.forEach(consumer);
+            if(!lines.isEmpty())
+                after = StatementSql.Cursor.of(lines.get(lines.size() - 1));
+        } while (lines.size() == MAX_PAGE_SIZE);
+    }
+
+    // выгрузка выписки одним запросом с чтением курсором (в read-only транзакции, которую требует курсор).
+    // Соединение занято до конца выгрузки: consumer может ждать медленного клиента.
+    public void stream(Long accountId, LocalDateTime since, LocalDateTime until, Consumer<StatementSql.Line> consumer) {
+        logger.info("Streaming statement for account with id '{}'", accountId);
+        var template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        template.executeWithoutResult(status -> recentWrites.readAccount(accountId, () -> {
+            statementSql.stream(accountId, since, until, consumer);
+            return null;
+        }));
+    }
+}
@@ -0,0 +1,36 @@
+package ture.app.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+// Заблаговременное создание месячных секций журнала операций (см. V6__Transactions_partitioned.sql).
+// Пока секции нет, новые операции попадают в transactions_default, а секцию за этот месяц
+// уже нельзя будет создать без переноса строк - поэтому секции создаются на несколько месяцев вперёд.
+@Component
+public class TransactionPartitions {
+    private static final Logger logger = LogManager.getLogger(TransactionPartitions.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // на сколько месяцев вперёд должны существовать секции
+    @Value("${app.transactions.partitions.ahead-months:3}")
+    private int aheadMonths;
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.transactions.partitions.check-ms:86400000}")
+    public void createAhead() {
+        var month = LocalDate.now().withDayOfMonth(1);
+        for (int i = 0; i <= aheadMonths; i++) {
+            jdbcTemplate.queryForList("SELECT create_transactions_partition(?)", Date.valueOf(month.plusMonths(i)));
+        }
+        logger.info("Transactions partitions are ready up to {}", month.plusMonths(aheadMonths));
+    }
+}
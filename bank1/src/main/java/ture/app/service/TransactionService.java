@@ -1,17 +1,26 @@
 package ture.app.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import jakarta.transaction.Transactional;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.StringMapMessage;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ture.app.cache.RecentWrites;
 import ture.app.entity.Account;
 import ture.app.entity.Transaction;
-import ture.app.repository.AccountRepository;
-import ture.app.native_sql.AppLocks;
-import ture.app.repository.TransactionRepository;
+import ture.app.money.Money;
+import ture.app.native_sql.TransferSql;
+
+import java.util.concurrent.TimeUnit;
 
 
 // Создаем класс TransactionService, который будет содержать основную логику переводов между пользователями.
@@ -22,34 +31,143 @@ import ture.app.repository.TransactionRepository;
 @Service
 public class TransactionService {
     private static final Logger logger = LogManager.getLogger(TransactionService.class);
+    // событие о выполненном переводе (MapMessage: в JSON-раскладке профиля prod - отдельные поля)
+    private static final Logger transfers = LogManager.getLogger("ture.app.transfers");
 
     @PersistenceContext
     private EntityManager entityManager;
 
     @Autowired
-    private TransactionRepository transactionRepository;
+    private TransferSql transferSql;
 
     @Autowired
-    private AppLocks appLocks;
+    private JpaTransferService jpaTransferService;
 
     @Autowired
-    private AccountRepository accountRepository;
+    private OptimisticTransferService optimisticTransferService;
 
-    @Transactional
-    public Transaction create(Long fromAccID, Long toAccID, Integer amount) {
-        var from_acc = accountRepository.findById(fromAccID);
-        var to_acc =   accountRepository.findById(toAccID);
-        if(from_acc.isEmpty())
-            throw new RuntimeException("From Account cannot be null");
-        if(to_acc.isEmpty())
-            throw new RuntimeException("To Account cannot be null");
+    @Autowired
+    private ShardedTransferService shardedTransferService;
+
+    @Autowired
+    private ShardedAccounts shardedAccounts;
+
+    @Autowired
+    private LedgerTransferService ledgerTransferService;
+
+    @Autowired
+    private TransferPhases transferPhases;
+
+    @Autowired
+    private PaymentKeys paymentKeys;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // чтение счетов сразу после перевода - из основной СУБД, а не с реплики
+    @Autowired
+    private RecentWrites recentWrites;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    // режим выполнения перевода
+    @Value("${app.transfer.mode:jpa}")
+    private TransferMode transferMode;
+
+    // общее время перевода: [режим (по TransferMode, последний - горячие счета)][0 - успех, 1 - ошибка]
+    private Timer[][] createTimers;
+
+    @PostConstruct
+    public void registerMetrics() {
+        var modes = TransferMode.values();
+        createTimers = new Timer[modes.length + 1][];
+        for (int i = 0; i <= modes.length; i++) {
+            var mode = i < modes.length ? modes[i].name().toLowerCase() : "sharded";
+            createTimers[i] = new Timer[]{createTimer(mode, "success"), createTimer(mode, "failure")};
+        }
+    }
+
+    private Timer createTimer(String mode, String outcome) {
+        return Timer.builder("app.transfer.create")
+                .description("Время перевода (без ожидания блокировок внутри JVM)")
+                .tags("mode", mode, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    // создание перевода по id счетов
+    // (без общей транзакции: каждый режим открывает свою, оптимистичный - по транзакции на попытку)
+    public Transaction create(Long fromAccID, Long toAccID, Long amount) {
+        return create(fromAccID, toAccID, amount, null);
+    }
+
+    // создание перевода по id счетов с занятым ключом идемпотентности (PaymentKeys.claim):
+    // результат по ключу пишется в транзакции перевода, при ошибке ключ освобождает вызывающий
+    public Transaction create(Long fromAccID, Long toAccID, Long amount, String idempotencyKey) {
+        if(logger.isDebugEnabled())
+            logger.debug("Creating transaction: {} -> {} = {}", fromAccID, toAccID, Money.format(amount));
+        if(amount <= 0)
+            throw new RuntimeException("Amount must be greater than zero");
+
+        // горячие счета (с корзинами остатка) - в любом режиме, кроме журнала проводок
+        var sharded = isSharded(fromAccID, toAccID);
+        var timers = timers(sharded);
+        var start = System.nanoTime();
+        transferPhases.start();
+        try {
+            var tran = idempotencyKey == null || idempotencyKey.isEmpty()
+                    ? transfer(fromAccID, toAccID, amount, sharded)
+                    : transfer(new TransferCommand(fromAccID, toAccID, amount, idempotencyKey), sharded);
+            transferPhases.finish();
+            recentWrites.accounts(fromAccID, toAccID);
+            timers[0].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return logged(tran, fromAccID, toAccID, amount, start);
+        } catch (RuntimeException e) {
+            timers[1].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Transaction transfer(Long fromAccID, Long toAccID, Long amount, boolean sharded) {
+        if(sharded)
+            return toTransaction(entityManager.getReference(Account.class, fromAccID),
+                                 entityManager.getReference(Account.class, toAccID),
+                                 amount,
+                                 shardedTransferService.transfer(fromAccID, toAccID, amount));
 
-        return create(from_acc.get(), to_acc.get(), amount);
+        return switch (transferMode) {
+            case JPA -> jpaTransferService.transfer(fromAccID, toAccID, amount);
+            // счета не читаем: существование и состояние проверит сам запрос перевода
+            case SINGLE_STATEMENT -> fromAccID.equals(toAccID)
+                    ? jpaTransferService.transfer(fromAccID, toAccID, amount)
+                    : createSingleStatement(entityManager.getReference(Account.class, fromAccID),
+                                            entityManager.getReference(Account.class, toAccID),
+                                            amount);
+            case OPTIMISTIC -> optimisticTransferService.transfer(fromAccID, toAccID, amount);
+            case LEDGER -> toTransaction(entityManager.getReference(Account.class, fromAccID),
+                                         entityManager.getReference(Account.class, toAccID),
+                                         amount,
+                                         ledgerTransferService.transfer(fromAccID, toAccID, amount));
+        };
     }
+    // перевод и результат по ключу в одной транзакции СУБД: режимы присоединяются к ней,
+    // оптимистичный повторяет транзакцию при конфликте - результат пишется в транзакции каждой попытки
+    private Transaction transfer(TransferCommand command, boolean sharded) {
+        if(!sharded && transferMode == TransferMode.OPTIMISTIC)
+            return optimisticTransferService.transfer(command.fromAccID(), command.toAccID(), command.amount(),
+                    tran -> paymentKeys.record(command, tran.getId(), tran.getCreatedAt()));
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            var tran = transfer(command.fromAccID(), command.toAccID(), command.amount(), sharded);
+            paymentKeys.record(command, tran.getId(), tran.getCreatedAt());
+            return tran;
+        });
+    }
+
         // создание перевода
-    @Transactional
-    public Transaction create(Account from_acc, Account to_acc, Integer amount) {
-        logger.info(String.format("Creating transaction: %s -> %s = %.2f", from_acc.getId(), to_acc.getId(), amount/100.0));
+    public Transaction create(Account from_acc, Account to_acc, Long amount) {
+        if(logger.isDebugEnabled())
+            logger.debug("Creating transaction: {} -> {} = {}", from_acc.getId(), to_acc.getId(), Money.format(amount));
         if(amount <= 0)
             throw new RuntimeException("Amount must be greater than zero");
         if(from_acc == null)
@@ -57,40 +175,87 @@ public class TransactionService {
         if(to_acc == null)
             throw new RuntimeException("To Account cannot be null");
 
-        //формируем массив блокируемых объектов
-        Object[] m = {from_acc,to_acc};
-        //блокируем
-        appLocks.lock(m);
-
-        //перечитываем из СУБД
-        entityManager.refresh(from_acc);
-        entityManager.refresh(to_acc);
-
-        //проверки
-        if(from_acc.getBlockedAt() != null)
-            throw new RuntimeException("From Account is blocked");
-        if(from_acc.getClosedAt() != null)
-            throw new RuntimeException("From Account is closed");
-        if(to_acc.getClosedAt() != null)
-            throw new RuntimeException("To Account is closed");
-
-        //меняем источник
-        from_acc.addAmount(-amount);
-        if(from_acc.getAmount() < 0)
-            throw new RuntimeException("From Amount must be greater than amount");
-        accountRepository.save(from_acc);
-
-        //меняем приёмник
-        to_acc.addAmount(amount);
-        accountRepository.save(to_acc);
-
-        //пишем лог операций
-        var transaction = new Transaction(from_acc, to_acc, amount);
-        transaction = transactionRepository.save(transaction);
+        var sharded = isSharded(from_acc.getId(), to_acc.getId());
+        var timers = timers(sharded);
+        var start = System.nanoTime();
+        transferPhases.start();
+        try {
+            var tran = transfer(from_acc, to_acc, amount, sharded);
+            transferPhases.finish();
+            recentWrites.accounts(from_acc.getId(), to_acc.getId());
+            timers[0].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return logged(tran, from_acc.getId(), to_acc.getId(), amount, start);
+        } catch (RuntimeException e) {
+            timers[1].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Transaction transfer(Account from_acc, Account to_acc, Long amount, boolean sharded) {
+        if(sharded)
+            return toTransaction(from_acc, to_acc, amount,
+                                 shardedTransferService.transfer(from_acc.getId(), to_acc.getId(), amount));
 
-        // Обновляем объект из БД, чтобы получить created_at
-        entityManager.refresh(transaction);
+        return switch (transferMode) {
+            case JPA -> jpaTransferService.transfer(from_acc, to_acc, amount);
+            case SINGLE_STATEMENT -> from_acc.getId().equals(to_acc.getId())
+                    ? jpaTransferService.transfer(from_acc, to_acc, amount)
+                    : createSingleStatement(from_acc, to_acc, amount);
+            case OPTIMISTIC -> optimisticTransferService.transfer(from_acc, to_acc, amount);
+            case LEDGER -> toTransaction(from_acc, to_acc, amount,
+                                         ledgerTransferService.transfer(from_acc.getId(), to_acc.getId(), amount));
+        };
+    }
 
+    // журнал проводок ведёт свои остатки и не блокирует строки счетов: горячие счета переводятся
+    // через него же (ShardedTransferService изменил бы accounts.amount, который перезапишет снимок)
+    private boolean isSharded(Long fromAccID, Long toAccID) {
+        return transferMode != TransferMode.LEDGER
+                && (shardedAccounts.isSharded(fromAccID) || shardedAccounts.isSharded(toAccID));
+    }
+
+        private Timer[] timers(boolean sharded) {
+        return createTimers[sharded ? createTimers.length - 1 : transferMode.ordinal()];
+    }
+
+    // одно событие на перевод: id операции, счета, сумма в копейках и время выполнения
+    private Transaction logged(Transaction tran, Long fromAccID, Long toAccID, Long amount, long start) {
+        if(transfers.isInfoEnabled())
+            transfers.info(new StringMapMessage(6)
+                    .with("event", "transfer")
+                    .with("transferId", tran.getId())
+                    .with("fromAccId", fromAccID)
+                    .with("toAccId", toAccID)
+                    .with("amount", amount)
+                    .with("latencyUs", (System.nanoTime() - start) / 1000));
+        return tran;
+    }
+
+    // перевод одним запросом к СУБД (своя транзакция в TransferSql): без advisory-блокировок, refresh и save
+    private Transaction createSingleStatement(Account from_acc, Account to_acc, Long amount) {
+        return toTransaction(from_acc, to_acc, amount,
+                             transferSql.transfer(from_acc.getId(), to_acc.getId(), amount));
+    }
+
+    // операция, выполненная в обход JPA, в виде сущности для ответа
+    private Transaction toTransaction(Account from_acc, Account to_acc, Long amount, TransferSql.Result res) {
+        syncAmount(from_acc, res.fromAmount());
+        syncAmount(to_acc, res.toAmount());
+
+        var transaction = new Transaction(from_acc, to_acc, amount);
+        transaction.setId(res.id());
+        transaction.setCreatedAt(res.createdAt());
         return transaction;
     }
+
+    // остаток уже изменён в СУБД: отсоединяем счёт, чтобы Hibernate не записал его повторно,
+    // и выставляем новое значение для ответа (незагруженные прокси не трогаем - лишний запрос;
+    // null - зачисление ушло в корзину горячего счёта, основная часть не менялась)
+    private void syncAmount(Account account, Long amount) {
+        if(amount == null || !Hibernate.isInitialized(account))
+            return;
+        if(entityManager.contains(account))
+            entityManager.detach(account);
+        account.setAmount(amount);
+    }
 }
@@ -0,0 +1,9 @@
+package ture.app.service;
+
+// Элемент пакетного перевода (idempotencyKey - занятый ключ идемпотентности, результат по нему
+// пишется в транзакции перевода; null - платёж без ключа)
+public record TransferCommand(Long fromAccID, Long toAccID, Long amount, String idempotencyKey) {
+    public TransferCommand(Long fromAccID, Long toAccID, Long amount) {
+        this(fromAccID, toAccID, amount, null);
+    }
+}
@@ -0,0 +1,19 @@
+package ture.app.service;
+
+// Режим выполнения перевода (свойство app.transfer.mode).
+// Блокирующие режимы берут строки счетов в порядке возрастания id, все режимы увеличивают version
+// при изменении счёта, поэтому режимы совместимы между собой и с пакетными переводами (BatchTransactionService).
+public enum TransferMode {
+    // advisory-блокировки, перечитывание счетов и сохранение через JPA
+    JPA,
+    // списание, зачисление, проверки и запись операции одним sql-запросом (TransferSql)
+    SINGLE_STATEMENT,
+    // без блокировок: проверка версии счёта при записи и повтор транзакции при конфликте
+    // (для счетов с низкой конкуренцией, см. benchmarks/ContentionBenchmarkRunner в src/jmh)
+    OPTIMISTIC,
+    // журнал проводок: операция и две проводки без изменения строк счетов, остаток - снимок + проводки
+    // (LedgerTransferService, LedgerSnapshots). Режим ведёт свои остатки: accounts.amount в нём - остаток
+    // на момент последнего снимка, поэтому переключать режим на работающей базе можно только после снимка.
+    // Горячие счета переводятся журналом же, корзины в режиме не назначаются (прежние учитываются в остатке)
+    LEDGER
+}
@@ -0,0 +1,18 @@
+package ture.app.service;
+
+import java.time.LocalDateTime;
+
+// Результат элемента пакетного перевода: id и дата операции либо сообщение об ошибке
+public record TransferOutcome(Long id, LocalDateTime createdAt, String errorMessage) {
+    public static TransferOutcome completed(Long id, LocalDateTime createdAt) {
+        return new TransferOutcome(id, createdAt, null);
+    }
+
+    public static TransferOutcome failed(String errorMessage) {
+        return new TransferOutcome(null, null, errorMessage);
+    }
+
+    public boolean isCompleted() {
+        return errorMessage == null;
+    }
+}
@@ -0,0 +1,58 @@
+package ture.app.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+// Создаем класс TransferPhases - время перевода по фазам (метрика app.transfer.phase).
+// Для чего это нужно:
+// - lock     - от начала перевода до получения блокировок (начало транзакции, advisory-блокировки, FOR UPDATE)
+// - validate - проверки счетов и остатка
+// - write    - запись остатков и операции, commit
+// Отметки ставит режим, в котором фазы разделимы (JPA); в остальных режимах фаз нет,
+// есть только общее время app.transfer.create. Ожидание блокировок внутри JVM (до начала
+// перевода) - в app.locks.local.wait.
+@Component
+public class TransferPhases {
+    public enum Phase {
+        LOCK, VALIDATE, WRITE
+    }
+
+    private final Timer[] timers = new Timer[Phase.values().length];
+
+    // отметки текущего перевода в потоке: [0] - время последней отметки, [1] - 1, если были отметки фаз
+    private final ThreadLocal<long[]> marks = ThreadLocal.withInitial(() -> new long[2]);
+
+    public TransferPhases(MeterRegistry registry) {
+        for (var phase : Phase.values())
+            timers[phase.ordinal()] = Timer.builder("app.transfer.phase")
+                    .description("Время фазы перевода")
+                    .tag("phase", phase.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry);
+    }
+
+    // начало перевода в текущем потоке
+    public void start() {
+        var m = marks.get();
+        m[0] = System.nanoTime();
+        m[1] = 0;
+    }
+
+    // завершение фазы: время с предыдущей отметки
+    public void mark(Phase phase) {
+        var m = marks.get();
+        var now = System.nanoTime();
+        timers[phase.ordinal()].record(now - m[0], TimeUnit.NANOSECONDS);
+        m[0] = now;
+        m[1] = 1;
+    }
+
+    // успешное завершение перевода: остаток времени - запись (если режим отмечал фазы)
+    public void finish() {
+        if(marks.get()[1] != 0)
+            mark(Phase.WRITE);
+    }
+}
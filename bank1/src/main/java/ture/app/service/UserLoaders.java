@@ -0,0 +1,88 @@
+package ture.app.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ture.app.native_sql.UsersSql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Загрузчики пользователей и счетов с объединением одиночных запросов (см. BatchLoader):
+// одиночные GetUser / GetUserAccounts от разных клиентов, пришедшие в одном окне,
+// выполняются одним запросом WHERE id = ANY(?)
+@Component
+public class UserLoaders {
+    @Autowired
+    private UsersSql usersSql;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    // окно сбора одиночных запросов
+    @Value("${app.users.loader.window-ms:2}")
+    private long windowMs;
+
+    // максимальное число ключей в одном пакетном запросе
+    @Value("${app.users.loader.max-batch:500}")
+    private int maxBatch;
+
+    // потоки, выполняющие пакетные запросы
+    @Value("${app.users.loader.threads:2}")
+    private int threads;
+
+    private ScheduledExecutorService executor;
+    private BatchLoader<Long, UsersSql.UserRow> users;
+    private BatchLoader<Long, List<UsersSql.AccountRow>> accounts;
+
+    @PostConstruct
+    public void start() {
+        var counter = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(threads, r -> {
+            var thread = new Thread(r, "user-loader-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        users = new BatchLoader<>("users", this::loadUsers, executor, windowMs, maxBatch, registry);
+        accounts = new BatchLoader<>("accounts", this::loadAccounts, executor, windowMs, maxBatch, registry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    // пользователь по id (null - не найден)
+    public CompletableFuture<UsersSql.UserRow> user(Long id) {
+        return users.load(id);
+    }
+
+    // счета пользователя (пустой список - счетов нет или пользователь не найден)
+    public CompletableFuture<List<UsersSql.AccountRow>> accounts(Long userId) {
+        return accounts.load(userId).thenApply(list -> list == null ? List.of() : list);
+    }
+
+    private Map<Long, UsersSql.UserRow> loadUsers(Set<Long> ids) {
+        var result = new HashMap<Long, UsersSql.UserRow>();
+        for (var user : usersSql.findUsers(ids))
+            result.put(user.id(), user);
+        return result;
+    }
+
+    private Map<Long, List<UsersSql.AccountRow>> loadAccounts(Set<Long> userIds) {
+        var result = new HashMap<Long, List<UsersSql.AccountRow>>();
+        for (var account : usersSql.findAccounts(userIds))
+            result.computeIfAbsent(account.userId(), id -> new ArrayList<>()).add(account);
+        return result;
+    }
+}
@@ -3,13 +3,20 @@ package ture.app.service;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import ture.app.entity.Account;
+import org.springframework.transaction.annotation.Transactional;
+import ture.app.cache.RecentWrites;
+import ture.app.dto.AccountDTO;
+import ture.app.dto.UserDTO;
+import ture.app.dto.UsersPageDTO;
 import ture.app.entity.User;
+import ture.app.native_sql.UsersSql;
 import ture.app.repository.UserRepository;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 // Создаем класс UserService, который будет содержать основную логику работы с пользователями.
@@ -21,67 +28,130 @@ import java.util.Optional;
 public class UserService {
     private static final Logger logger = LogManager.getLogger(UserService.class);
 
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     private UserRepository userRepository;
 
+    // счета страницы - тем же запросом (и тем же выражением остатка), что и в gRPC/GraphQL
+    @Autowired
+    private UsersSql usersSql;
+
+    @Autowired
+    private RecentWrites recentWrites;
+
     // Создание нового пользователя
     public User createUser(String username, String email) {
-        logger.info(String.format("Creating new user '%s' with email '%s'", username, email));
+        logger.info("Creating new user '{}' with email '{}'", username, email);
         User user = new User(username, email);
-        return userRepository.save(user);
+        user = userRepository.save(user);
+        recentWrites.user(user.getId());
+        return user;
     }
     // Получение всех пользователей
+    @Transactional(readOnly = true)
     public List<User> getAllUsers() {
-        logger.info(String.format("Retrieving all users."));
+        logger.info("Retrieving all users.");
         return userRepository.findAll();
     }
+    // Страница пользователей после указанного id: не более двух запросов при любом размере страницы
+    // (пользователи и, при необходимости, их счета - сразу в DTO, без ленивых связей)
+    @Transactional(readOnly = true)
+    public UsersPageDTO getUsersPage(Long afterId, Integer limit, boolean includeAccounts) {
+        logger.info("Retrieving users after id '{}'", afterId);
+        var size = limit == null || limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        var users = userRepository.findPageAfter(afterId == null ? 0L : afterId, PageRequest.ofSize(size));
+        if(includeAccounts && !users.isEmpty()) {
+            var byId = new HashMap<Long, UserDTO>();
+            for (var user : users) {
+                user.setAccounts(new ArrayList<>());
+                byId.put(user.getId(), user);
+            }
+            for (var row : usersSql.findAccounts(byId.keySet()))
+                byId.get(row.userId()).getAccounts().add(toAccountDTO(row));
+        }
+        var next = users.size() < size ? null : users.get(users.size() - 1).getId();
+        return new UsersPageDTO(users, next);
+    }
     // Получение пользователя по ID
+    @Transactional(readOnly = true)
     public Optional<User> getUserById(Long id) {
-        logger.info(String.format("Retrieving user with id '%s'", id));
-        return userRepository.findById(id);
+        logger.info("Retrieving user with id '{}'", id);
+        return recentWrites.readUser(id, () -> userRepository.findById(id));
     }
     // Получение пользователя по имени
+    @Transactional(readOnly = true)
     public Optional<User> getUserByName(String name) {
-        logger.info(String.format("Retrieving user with name '%s'", name));
+        logger.info("Retrieving user with name '{}'", name);
         return userRepository.findByName(name);
     }
     // Обновление имени пользователя
     public User updateUser(Long id, String name) {
-        logger.info(String.format("Updating user with id '%s', new name is '%s'", id, name));
+        logger.info("Updating user with id '{}', new name is '{}'", id, name);
         Optional<User> user = userRepository.findById(id);
         if (user.isPresent()) {
             User usr = user.get();
             usr.setName(name);
-            return userRepository.save(usr);
+            usr = userRepository.save(usr);
+            recentWrites.user(id);
+            return usr;
         }
         return null;
     }
     // Получение пользователя по email
+    @Transactional(readOnly = true)
     public Optional<User> getUserByEmail(String email) {
-        logger.info(String.format("Retrieving user with email '%s'", email));
+        logger.info("Retrieving user with email '{}'", email);
         return userRepository.findByEmail(email);
     }
     // Обновление email пользователя
     public User updateUserEmail(Long id, String email) {
-        logger.info(String.format("Updating user with id '%s', new email is '%s'", id, email));
+        logger.info("Updating user with id '{}', new email is '{}'", id, email);
         Optional<User> user = userRepository.findById(id);
         if (user.isPresent()) {
             User usr = user.get();
             usr.setEmail(email);
-            return userRepository.save(usr);
+            usr = userRepository.save(usr);
+            recentWrites.user(id);
+            return usr;
         }
         return null;
     }
     // Удаление пользователя
     public void deleteUserById(Long id) {
-        logger.warn(String.format("Deleting user with id '%s'", id));
+        logger.warn("Deleting user with id '{}'", id);
         userRepository.deleteById(id);
+        recentWrites.user(id);
+    }
+    // Получение списка счетов (пусто - пользователь не найден).
+    // Остатки - выражением BalanceSql (корзины горячего счёта, журнал проводок), а не accounts.amount сущности
+    @Transactional(readOnly = true)
+    public Optional<List<AccountDTO>> getAccounts(Long id) {
+        logger.info("Retrieving user`a accounts with id '{}'", id);
+        return recentWrites.readUser(id, () -> {
+            var accounts = findAccountDTOs(id);
+            // без счетов - отдельная проверка, есть ли пользователь
+            return accounts.isEmpty() && !userRepository.existsById(id) ? Optional.empty() : Optional.of(accounts);
+        });
+    }
+    // Пользователь в ответе API: счета и их остатки - тем же запросом, что и в getAccounts
+    @Transactional(readOnly = true)
+    public UserDTO toDTO(User user) {
+        var accounts = recentWrites.readUser(user.getId(), () -> findAccountDTOs(user.getId()));
+        return new UserDTO(user.getId(), user.getName(), user.getEmail(), user.getCreatedAt(), accounts);
     }
-    // Получение списка счетов
-    public Map<String,Account> getAccounts(Long id) {
-        logger.info(String.format("Retrieving user`a accounts with id '%s'", id));
-        var user = userRepository.findById(id);
-        return user.map(User::getAccounts).orElse(null);
+
+    private List<AccountDTO> findAccountDTOs(Long userId) {
+        return usersSql.findAccounts(List.of(userId))
+                .stream()
+                .map(UserService::toAccountDTO)
+                .toList();
+    }
+
+    private static AccountDTO toAccountDTO(UsersSql.AccountRow row) {
+        return new AccountDTO(row.id(), row.name(), row.amount(), row.userId(),
+                row.createdAt(), row.blockedAt(), row.closedAt());
     }
 
 }
@@ -1,42 +1,121 @@
 package ture.app.service.grpc;
 
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import net.devh.boot.grpc.server.service.GrpcService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import ture.app.dto.AccountDTO;
 import ture.app.entity.Account;
+import ture.app.entity.Transaction;
 import ture.app.service.AccountService;
+import ture.app.service.AdmissionRejectedException;
+import ture.app.service.BatchTransactionService;
+import ture.app.money.Money;
+import ture.app.native_sql.StatementSql;
+import ture.app.service.PaymentAdmission;
+import ture.app.service.PaymentInProgressException;
+import ture.app.service.PaymentJournal;
+import ture.app.service.PaymentKeys;
+import ture.app.service.StatementService;
 import ture.app.service.TransactionService;
+import ture.app.service.TransferCommand;
+import ture.app.service.TransferOutcome;
+import ture.app.transactions.PaymentBatchRequest;
+import ture.app.transactions.PaymentBatchResponse;
 import ture.app.transactions.PaymentRequest;
 import ture.app.transactions.PaymentResponse;
 import ture.app.transactions.PaymentStatus;
+import ture.app.transactions.StatementLine;
+import ture.app.transactions.StatementPage;
+import ture.app.transactions.StatementRequest;
 import ture.app.transactions.TransactionsServiceGrpc;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 @GrpcService
 public class TransactionsGrpcService extends TransactionsServiceGrpc.TransactionsServiceImplBase {
     private static final Logger logger = LoggerFactory.getLogger(TransactionsGrpcService.class);
 
-    public Integer convertToInteger(String amount) {
-        // Убираем возможные пробелы
-        String cleaned = amount.trim();
+    @Autowired
+    private TransactionService transactionService;
 
-        // Преобразуем в BigDecimal для точности
-        BigDecimal decimal = new java.math.BigDecimal(cleaned);
+    @Autowired
+    private AccountService accountService;
 
-        // Умножаем на 100 и преобразуем в Integer
-        return decimal.multiply(new java.math.BigDecimal("100")).intValue();
-    }
+    @Autowired
+    private BatchTransactionService batchTransactionService;
 
     @Autowired
-    private TransactionService transactionService;
+    private PaymentJournal paymentJournal;
 
     @Autowired
-    private AccountService accountService;
+    private PaymentKeys paymentKeys;
+
+    @Autowired
+    private PaymentAdmission paymentAdmission;
+
+    @Autowired
+    private StatementService statementService;
+
+    // платежи потока выполняются группами по мере поступления
+    @Value("${app.transfer.batch-size:500}")
+    private int batchSize;
+
+    // предел платежей в одном потоке: результаты копятся до конца потока
+    @Value("${app.payments.stream.max-payments:100000}")
+    private int streamMaxPayments;
+
+    // потоки выгрузки выписок: каждый держит соединение с СУБД до конца выгрузки
+    @Value("${app.statement.stream.threads:4}")
+    private int streamThreads;
+
+    // выгрузки занимают соединения пула надолго - для остальных запросов оставляем reserved-connections
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int poolSize;
+
+    @Value("${app.statement.stream.reserved-connections:4}")
+    private int reservedConnections;
+
+    private ThreadPoolExecutor streamExecutor;
+
+    @PostConstruct
+    void start() {
+        var counter = new AtomicInteger();
+        var threads = Math.max(1, Math.min(streamThreads, poolSize - reservedConnections));
+        if(threads < streamThreads)
+            logger.warn("Statement stream threads reduced to {}: pool size {}, reserved {}",
+                    threads, poolSize, reservedConnections);
+        // без очереди: выгрузка сверх числа потоков сразу отклоняется RESOURCE_EXHAUSTED, а не ждёт
+        streamExecutor = new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(),
+                r -> {
+                    var thread = new Thread(r, "statement-stream-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    void stop() {
+        streamExecutor.shutdownNow();
+    }
 
     @Override
     public void processPayment(PaymentRequest request,
@@ -46,18 +125,54 @@ public class TransactionsGrpcService extends TransactionsServiceGrpc.Transaction
                 request.getToAccountId(),
                 request.getAmount());
 
+        if(paymentJournal.isEnabled()) {
+            journalPayment(request, responseObserver);
+            return;
+        }
+
         try {
             var fromAccID = request.getFromAccountId();
             var toAccID =request.getToAccountId();
-            var amount = convertToInteger(request.getAmount());
+            var amount = Money.parse(request.getAmount());
+
+            // предел одновременных платежей по счетам: сверх него - сразу RESOURCE_EXHAUSTED (повторяемый статус)
+            PaymentAdmission.Permit permit;
+            try {
+                permit = paymentAdmission.acquire(fromAccID, toAccID);
+            } catch (AdmissionRejectedException e) {
+                responseObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription(e.getMessage()).asRuntimeException());
+                logger.info("gRPC Payment rejected: {}", e.getMessage());
+                return;
+            }
 
-            var tran = transactionService.create(fromAccID, toAccID, amount);
+            var key = request.getIdempotencyKey();
+            var command = new TransferCommand(fromAccID, toAccID, amount, key);
+            Transaction tran;
+            try (permit) {
+                var previous = paymentKeys.claim(key, command);
+                if(previous.isPresent()) {
+                    responseObserver.onNext(toResponse(request, command, previous.get()));
+                    responseObserver.onCompleted();
+                    logger.info("gRPC Payment repeat response sent");
+                    return;
+                }
+
+                try {
+                    tran = transactionService.create(fromAccID, toAccID, amount, key);
+                } catch (PaymentInProgressException e) {
+                    // ключ занял заново другой запрос (аренда истекла) - освобождать его нельзя
+                    throw e;
+                } catch (RuntimeException e) {
+                    paymentKeys.release(key);
+                    throw e;
+                }
+            }
 
             PaymentResponse response = PaymentResponse.newBuilder()
                     .setId(tran.getId())
                     .setFromAccountId(fromAccID)
                     .setToAccountId(toAccID)
-                    .setAmount(String.format("%.2f", tran.getAmount()/100.0))
+                    .setAmount(Money.format(tran.getAmount()))
                     .setStatus(PaymentStatus.COMPLETED)
                     .setCreatedAt(tran.getCreatedAt().toString())
                     .build();
@@ -82,12 +197,316 @@ public class TransactionsGrpcService extends TransactionsServiceGrpc.Transaction
             logger.info("gRPC Payment err: {}", e.getMessage());
         }
     }
-}
 
+    // групповая фиксация: ответ отправляется после commit пачки
+    private void journalPayment(PaymentRequest request,
+                                StreamObserver<PaymentResponse> responseObserver) {
+        var key = request.getIdempotencyKey();
+        TransferCommand command;
+        try {
+            command = new TransferCommand(request.getFromAccountId(),
+                                          request.getToAccountId(),
+                                          Money.parse(request.getAmount()),
+                                          key);
+            var previous = paymentKeys.claim(key, command);
+            if(previous.isPresent()) {
+                responseObserver.onNext(toResponse(request, command, previous.get()));
+                responseObserver.onCompleted();
+                logger.info("gRPC Payment repeat response sent");
+                return;
+            }
+        } catch (Exception e) {
+            responseObserver.onNext(failed(request, e.getMessage()));
+            responseObserver.onCompleted();
+            logger.info("gRPC Payment err: {}", e.getMessage());
+            return;
+        }
+
+        // результат по ключу пишется в транзакции пачки
+        paymentJournal.submit(command).whenComplete((outcome, e) -> {
+            var response = e != null
+                    ? failed(request, e.getMessage())
+                    : toResponse(request, command, outcome);
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+            logger.info("gRPC Payment response sent: {}", response.getStatus());
+        });
+    }
+
+    @Override
+    public void processPaymentBatch(PaymentBatchRequest request,
+                                    StreamObserver<PaymentBatchResponse> responseObserver) {
+        logger.info("gRPC Payment batch received: {} payments", request.getPaymentsCount());
+        try {
+            responseObserver.onNext(processBatch(request.getPaymentsList()));
+            responseObserver.onCompleted();
+            logger.info("gRPC Payment batch response sent");
+        } catch (Exception e) {
+            logger.info("gRPC Payment batch err: {}", e.getMessage());
+            responseObserver.onError(e);
+        }
+    }
+
+    @Override
+    public StreamObserver<PaymentRequest> processPaymentStream(StreamObserver<PaymentBatchResponse> responseObserver) {
+        // в памяти - не больше группы запросов и результаты уже выполненных платежей (не больше предела);
+        // при превышении предела поток завершается RESOURCE_EXHAUSTED, выполненные платежи остаются выполненными
+        // (повтор с теми же ключами идемпотентности получит их исходный результат)
+        return new StreamObserver<>() {
+            private final List<PaymentRequest> pending = new ArrayList<>();
+            private final List<PaymentResponse> responses = new ArrayList<>();
+            private boolean finished;
+
+            @Override
+            public void onNext(PaymentRequest request) {
+                if(finished)
+                    return;
+                if(responses.size() + pending.size() >= streamMaxPayments) {
+                    fail(Status.RESOURCE_EXHAUSTED
+                            .withDescription(String.format("Payment stream must contain at most %s payments", streamMaxPayments))
+                            .asRuntimeException());
+                    return;
+                }
+                pending.add(request);
+                if(pending.size() >= batchSize)
+                    flush();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                finished = true;
+                logger.info("gRPC Payment stream cancelled: {}", t.getMessage());
+            }
+
+            @Override
+            public void onCompleted() {
+                if(finished)
+                    return;
+                flush();
+                if(finished)
+                    return;
+                finished = true;
+                logger.info("gRPC Payment stream received: {} payments", responses.size());
+                responseObserver.onNext(PaymentBatchResponse.newBuilder().addAllPayments(responses).build());
+                responseObserver.onCompleted();
+                logger.info("gRPC Payment stream response sent");
+            }
+
+            private void flush() {
+                if(pending.isEmpty())
+                    return;
+                try {
+                    responses.addAll(processBatch(pending).getPaymentsList());
+                    pending.clear();
+                } catch (Exception e) {
+                    fail(e);
+                }
+            }
+
+            private void fail(Throwable e) {
+                finished = true;
+                pending.clear();
+                logger.info("gRPC Payment stream err: {}", e.getMessage());
+                responseObserver.onError(e);
+            }
+        };
+    }
+
+    @Override
+    public void getStatement(StatementRequest request,
+                             StreamObserver<StatementPage> responseObserver) {
+        logger.info("gRPC Statement request received: {} after '{}'", request.getAccountId(), request.getCursor());
+        StatementService.Page page;
+        try {
+            page = statementService.getPage(request.getAccountId(),
+                                            parseDateTime(request.getSince()),
+                                            parseDateTime(request.getUntil()),
+                                            request.getCursor(),
+                                            request.getLimit());
+        } catch (RuntimeException e) {
+            logger.info("gRPC Statement err: {}", e.getMessage());
+            responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+
+        var builder = StatementPage.newBuilder();
+        page.lines().forEach(line -> builder.addLines(toStatementLine(line)));
+        if(page.next() != null)
+            builder.setNextCursor(page.next());
+        responseObserver.onNext(builder.build());
+        responseObserver.onCompleted();
+    }
+
+    // Выписка читается курсором СУБД в отдельном потоке и отправляется по мере готовности клиента:
+    // пока транспорт не готов (isReady), чтение курсора приостанавливается, поэтому память не растёт
+    // с размером выписки. Отмена вызова клиентом прерывает запрос.
+    @Override
+    public void streamStatement(StatementRequest request,
+                                StreamObserver<StatementLine> responseObserver) {
+        logger.info("gRPC Statement stream request received: {}", request.getAccountId());
+        var observer = (ServerCallStreamObserver<StatementLine>) responseObserver;
+        var flow = new FlowControl(observer);
+        observer.setOnReadyHandler(flow::signal);
+        observer.setOnCancelHandler(flow::cancel);
+
+        LocalDateTime since;
+        LocalDateTime until;
+        try {
+            since = parseDateTime(request.getSince());
+            until = parseDateTime(request.getUntil());
+        } catch (RuntimeException e) {
+            observer.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+            return;
+        }
+
+        try {
+            streamExecutor.execute(() -> {
+                var sent = new AtomicInteger();
+                try {
+                    statementService.stream(request.getAccountId(), since, until, line -> {
+                        flow.awaitReady();
+                        observer.onNext(toStatementLine(line));
+                        sent.incrementAndGet();
+                    });
+                    observer.onCompleted();
+                    logger.info("gRPC Statement stream sent: {} lines", sent.get());
+                } catch (CancellationException e) {
+                    logger.info("gRPC Statement stream cancelled after {} lines", sent.get());
+                } catch (RuntimeException e) {
+                    logger.info("gRPC Statement stream err: {}", e.getMessage());
+                    if(!flow.isCancelled())
+                        observer.onError(Status.INTERNAL.withDescription(e.getMessage()).asRuntimeException());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            observer.onError(Status.RESOURCE_EXHAUSTED.withDescription("Too many statement streams").asRuntimeException());
+        }
+    }
 
+    // ожидание готовности транспорта к следующему сообщению
+    // (ReentrantLock вместо synchronized/wait: ожидание не закрепляет виртуальный поток за несущим)
+    private static final class FlowControl {
+        private final ServerCallStreamObserver<?> observer;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition ready = lock.newCondition();
+        private volatile boolean cancelled;
 
+        FlowControl(ServerCallStreamObserver<?> observer) {
+            this.observer = observer;
+        }
+
+        void awaitReady() {
+            lock.lock();
+            try {
+                while (!cancelled && !observer.isReady())
+                    ready.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelled = true;
+            } finally {
+                lock.unlock();
+            }
+            if(cancelled)
+                throw new CancellationException("Statement stream cancelled");
+        }
+
+        void signal() {
+            lock.lock();
+            try {
+                ready.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            signal();
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static LocalDateTime parseDateTime(String value) {
+        return value.isEmpty() ? null : LocalDateTime.parse(value);
+    }
 
+    private static StatementLine toStatementLine(StatementSql.Line line) {
+        return StatementLine.newBuilder()
+                .setId(line.id())
+                .setFromAccountId(line.fromAccID())
+                .setToAccountId(line.toAccID())
+                .setAmount(Money.format(line.amount()))
+                .setCreatedAt(line.createdAt().toString())
+                .build();
+    }
 
+    // выполнение пакета: некорректные суммы отклоняются сразу, повторы по ключу идемпотентности
+    // получают исходный результат, остальное - группами в BatchTransactionService
+    private PaymentBatchResponse processBatch(List<PaymentRequest> requests) {
+        var responses = new PaymentResponse[requests.size()];
+        var commands = new ArrayList<TransferCommand>(requests.size());
+        var indexes = new ArrayList<Integer>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            var request = requests.get(i);
+            try {
+                var amount = Money.parse(request.getAmount());
+                var command = new TransferCommand(request.getFromAccountId(), request.getToAccountId(), amount,
+                                                  request.getIdempotencyKey());
+                var previous = paymentKeys.claim(request.getIdempotencyKey(), command);
+                if(previous.isPresent()) {
+                    responses[i] = toResponse(request, command, previous.get());
+                    continue;
+                }
+                commands.add(command);
+                indexes.add(i);
+            } catch (Exception e) {
+                responses[i] = failed(request, e.getMessage());
+            }
+        }
 
+        List<TransferOutcome> outcomes;
+        try {
+            outcomes = batchTransactionService.createBatch(commands);
+        } catch (RuntimeException e) {
+            paymentKeys.releaseAll(commands);
+            throw e;
+        }
+        // результаты по ключам уже записаны в транзакциях групп
+        for (int k = 0; k < outcomes.size(); k++) {
+            int i = indexes.get(k);
+            responses[i] = toResponse(requests.get(i), commands.get(k), outcomes.get(k));
+        }
 
+        return PaymentBatchResponse.newBuilder()
+                .addAllPayments(List.of(responses))
+                .build();
+    }
+
+    private PaymentResponse toResponse(PaymentRequest request, TransferCommand command, TransferOutcome outcome) {
+        if(!outcome.isCompleted())
+            return failed(request, outcome.errorMessage());
+        return PaymentResponse.newBuilder()
+                .setId(outcome.id())
+                .setFromAccountId(command.fromAccID())
+                .setToAccountId(command.toAccID())
+                .setAmount(Money.format(command.amount()))
+                .setStatus(PaymentStatus.COMPLETED)
+                .setCreatedAt(outcome.createdAt().toString())
+                .build();
+    }
 
+    private PaymentResponse failed(PaymentRequest request, String errorMessage) {
+        var builder = PaymentResponse.newBuilder()
+                .setId(0)
+                .setFromAccountId(request.getFromAccountId())
+                .setToAccountId(request.getToAccountId())
+                .setAmount(request.getAmount())
+                .setStatus(PaymentStatus.FAILED);
+        if(errorMessage != null)
+            builder.setErrorMessage(errorMessage);
+        return builder.build();
+    }
+}
@@ -0,0 +1,209 @@
+package ture.app.service.grpc;
+
+import io.grpc.stub.StreamObserver;
+import net.devh.boot.grpc.server.service.GrpcService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import ture.app.money.Money;
+import ture.app.native_sql.UsersSql;
+import ture.app.service.UserLoaders;
+import ture.app.users.Account;
+import ture.app.users.Accounts;
+import ture.app.users.AccountsBatch;
+import ture.app.users.AccountsList;
+import ture.app.users.Status;
+import ture.app.users.User;
+import ture.app.users.UserId;
+import ture.app.users.UserIds;
+import ture.app.users.UserResp;
+import ture.app.users.Users;
+import ture.app.users.UsersServiceGrpc;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// gRPC-сервис пользователей для внутренних клиентов.
+// Пакетные методы (GetUsers, GetAccounts) выполняют один запрос к СУБД на весь список,
+// одиночные (GetUser, GetUserAccounts) объединяются между клиентами через UserLoaders.
+@GrpcService
+public class UsersGrpcService extends UsersServiceGrpc.UsersServiceImplBase {
+    private static final Logger logger = LoggerFactory.getLogger(UsersGrpcService.class);
+
+    @Autowired
+    private UsersSql usersSql;
+
+    @Autowired
+    private UserLoaders userLoaders;
+
+    // предел id в одном пакетном запросе: список уходит в СУБД одним массивом, ответ собирается в памяти
+    @Value("${app.users.grpc.max-ids:1000}")
+    private int maxIds;
+
+    @Override
+    public void getUser(UserId request, StreamObserver<UserResp> responseObserver) {
+        logger.info("gRPC GetUser request received: {}", request.getId());
+        var user = userLoaders.user(request.getId());
+        var accounts = request.getIncludeAccounts()
+                ? userLoaders.accounts(request.getId())
+                : CompletableFuture.completedFuture(List.<UsersSql.AccountRow>of());
+        user.thenCombine(accounts, (row, list) -> row == null
+                        ? UserResp.newBuilder()
+                                .setStatus(Status.FAILED)
+                                .setErrorMessage("User not found")
+                                .build()
+                        : UserResp.newBuilder()
+                                .setStatus(Status.SUCCESS)
+                                .setUser(toUser(row, list))
+                                .build())
+                .exceptionally(e -> UserResp.newBuilder()
+                        .setStatus(Status.FAILED)
+                        .setErrorMessage(message(e))
+                        .build())
+                .thenAccept(response -> {
+                    responseObserver.onNext(response);
+                    responseObserver.onCompleted();
+                });
+    }
+
+    @Override
+    public void getUsers(UserIds request, StreamObserver<Users> responseObserver) {
+        logger.info("gRPC GetUsers request received: {} ids", request.getIdsCount());
+        if(tooManyIds(request, responseObserver))
+            return;
+        Users response;
+        try {
+            var ids = new LinkedHashSet<>(request.getIdsList());
+            var rows = new HashMap<Long, UsersSql.UserRow>();
+            for (var row : usersSql.findUsers(ids))
+                rows.put(row.id(), row);
+            var accounts = request.getIncludeAccounts()
+                    ? groupByUser(usersSql.findAccounts(rows.keySet()))
+                    : Map.<Long, List<UsersSql.AccountRow>>of();
+
+            // в порядке запроса, ненайденные пропускаются
+            var builder = Users.newBuilder().setStatus(Status.SUCCESS);
+            for (var id : ids) {
+                var row = rows.get(id);
+                if(row != null)
+                    builder.addUsers(toUser(row, accounts.getOrDefault(id, List.of())));
+            }
+            response = builder.build();
+        } catch (Exception e) {
+            logger.info("gRPC GetUsers err: {}", e.getMessage());
+            response = Users.newBuilder()
+                    .setStatus(Status.FAILED)
+                    .setErrorMessage(String.valueOf(e.getMessage()))
+                    .build();
+        }
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getUserAccounts(UserId request, StreamObserver<Accounts> responseObserver) {
+        logger.info("gRPC GetUserAccounts request received: {}", request.getId());
+        userLoaders.accounts(request.getId())
+                .thenApply(list -> Accounts.newBuilder()
+                        .setStatus(Status.SUCCESS)
+                        .setUserId(request.getId())
+                        .setAccounts(toAccountsList(request.getId(), list))
+                        .build())
+                .exceptionally(e -> Accounts.newBuilder()
+                        .setStatus(Status.FAILED)
+                        .setUserId(request.getId())
+                        .setErrorMessage(message(e))
+                        .build())
+                .thenAccept(response -> {
+                    responseObserver.onNext(response);
+                    responseObserver.onCompleted();
+                });
+    }
+
+    @Override
+    public void getAccounts(UserIds request, StreamObserver<AccountsBatch> responseObserver) {
+        logger.info("gRPC GetAccounts request received: {} ids", request.getIdsCount());
+        if(tooManyIds(request, responseObserver))
+            return;
+        AccountsBatch response;
+        try {
+            var ids = new LinkedHashSet<>(request.getIdsList());
+            var accounts = groupByUser(usersSql.findAccounts(ids));
+            var builder = AccountsBatch.newBuilder().setStatus(Status.SUCCESS);
+            for (var id : ids)
+                builder.addUsers(toAccountsList(id, accounts.getOrDefault(id, List.of())));
+            response = builder.build();
+        } catch (Exception e) {
+            logger.info("gRPC GetAccounts err: {}", e.getMessage());
+            response = AccountsBatch.newBuilder()
+                    .setStatus(Status.FAILED)
+                    .setErrorMessage(String.valueOf(e.getMessage()))
+                    .build();
+        }
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+    }
+
+    // слишком длинный список id - INVALID_ARGUMENT (повтор того же запроса бесполезен)
+    private boolean tooManyIds(UserIds request, StreamObserver<?> responseObserver) {
+        if(request.getIdsCount() <= maxIds)
+            return false;
+        logger.info("gRPC request rejected: {} ids, max {}", request.getIdsCount(), maxIds);
+        responseObserver.onError(io.grpc.Status.INVALID_ARGUMENT
+                .withDescription(String.format("At most %s ids are allowed", maxIds))
+                .asRuntimeException());
+        return true;
+    }
+
+    private static Map<Long, List<UsersSql.AccountRow>> groupByUser(List<UsersSql.AccountRow> rows) {
+        var result = new HashMap<Long, List<UsersSql.AccountRow>>();
+        for (var row : rows)
+            result.computeIfAbsent(row.userId(), id -> new ArrayList<>()).add(row);
+        return result;
+    }
+
+    private static User toUser(UsersSql.UserRow row, List<UsersSql.AccountRow> accounts) {
+        var builder = User.newBuilder()
+                .setId(row.id())
+                .setName(row.name())
+                .setEmail(row.email())
+                .setCreatedAt(format(row.createdAt()));
+        accounts.forEach(account -> builder.addAccounts(toAccount(account)));
+        return builder.build();
+    }
+
+    private static AccountsList toAccountsList(Long userId, List<UsersSql.AccountRow> accounts) {
+        var builder = AccountsList.newBuilder().setUserId(userId);
+        accounts.forEach(account -> builder.addAccounts(toAccount(account)));
+        return builder.build();
+    }
+
+    private static Account toAccount(UsersSql.AccountRow row) {
+        return Account.newBuilder()
+                .setId(row.id())
+                .setUserId(row.userId())
+                .setName(row.name())
+                .setAmount(Money.format(row.amount()))
+                .setCreatedAt(format(row.createdAt()))
+                .setBlockedAt(format(row.blockedAt()))
+                .setClosedAt(format(row.closedAt()))
+                .build();
+    }
+
+    // причина ошибки пакетного запроса (без обёртки CompletionException)
+    private static String message(Throwable e) {
+        var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return String.valueOf(cause.getMessage());
+    }
+
+    private static String format(LocalDateTime value) {
+        return value == null ? "" : value.toString();
+    }
+}
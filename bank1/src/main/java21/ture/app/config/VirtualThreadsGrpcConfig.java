@@ -0,0 +1,31 @@
+package ture.app.config;
+
+import net.devh.boot.grpc.server.serverfactory.GrpcServerConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Обработчики gRPC на виртуальных потоках (spring.threads.virtual.enabled=true, сборка с -PjavaVersion=21).
+// HTTP-обработчики Tomcat Spring Boot переводит на виртуальные потоки сам по тому же свойству.
+// Число одновременных обращений к СУБД ограничивает BoundedDataSource (app.db.semaphore.enabled).
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadsGrpcConfig {
+
+    // бин, чтобы при остановке контекста close() дождался обработчиков, начатых до остановки сервера.
+    // defaultCandidate = false: не внедряется по типу и не отключает applicationTaskExecutor Spring Boot
+    @Bean(destroyMethod = "close", defaultCandidate = false)
+    public ExecutorService grpcVirtualThreadExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean
+    public GrpcServerConfigurer virtualThreadsGrpcServerConfigurer() {
+        var executor = grpcVirtualThreadExecutor();
+        return serverBuilder -> serverBuilder.executor(executor);
+    }
+}
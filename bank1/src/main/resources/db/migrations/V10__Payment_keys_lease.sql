@@ -0,0 +1,5 @@
+-- Аренда занятого ключа идемпотентности: строка без transaction_id, занятая раньше срока аренды
+-- (app.payments.idempotency.lease-seconds), может быть занята повтором заново - например,
+-- если процесс завершился между занятием ключа и commit перевода.
+ALTER TABLE payment_keys
+    ADD COLUMN claimed_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT NOW();
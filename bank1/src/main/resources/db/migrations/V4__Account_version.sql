@@ -0,0 +1,2 @@
+ALTER TABLE accounts
+    ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,15 @@
+-- число корзин остатка "горячего" счёта (0 - обычный счёт)
+ALTER TABLE accounts
+    ADD COLUMN buckets INTEGER DEFAULT 0 NOT NULL;
+
+-- корзины остатка: остаток счёта = accounts.amount + сумма корзин
+CREATE TABLE account_buckets
+(
+    account_id BIGINT            NOT NULL,
+    bucket     INTEGER           NOT NULL,
+    amount     INTEGER DEFAULT 0 NOT NULL,
+    CONSTRAINT pk_account_buckets PRIMARY KEY (account_id, bucket)
+);
+
+ALTER TABLE account_buckets
+    ADD CONSTRAINT ACCOUNT_BUCKETS_ACCOUNTS FOREIGN KEY (account_id) REFERENCES accounts (id);
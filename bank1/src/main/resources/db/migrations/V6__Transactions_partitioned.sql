@@ -0,0 +1,65 @@
+-- Журнал операций секционируется по месяцам (created_at).
+-- Ключ секционирования должен входить в первичный ключ, поэтому PK = (id, created_at);
+-- уникальность id обеспечивает identity-последовательность.
+
+ALTER TABLE transactions RENAME TO transactions_old;
+ALTER TABLE transactions_old RENAME CONSTRAINT pk_transactions TO pk_transactions_old;
+ALTER INDEX idx_transactions_created_at RENAME TO idx_transactions_old_created_at;
+
+CREATE TABLE transactions
+(
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    created_at  TIMESTAMP WITHOUT TIME ZONE DEFAULT NOW() NOT NULL,
+    from_acc_id BIGINT                                  NOT NULL,
+    to_acc_id   BIGINT                                  NOT NULL,
+    amount      INTEGER,
+    CONSTRAINT pk_transactions PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+-- создание секции за месяц, в который попадает дата (повторный вызов ничего не делает)
+CREATE OR REPLACE FUNCTION create_transactions_partition(month DATE) RETURNS VOID AS
+$$
+DECLARE
+    start_at DATE := date_trunc('month', month)::DATE;
+    end_at   DATE := (date_trunc('month', month) + INTERVAL '1 month')::DATE;
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF transactions FOR VALUES FROM (%L) TO (%L)',
+                   'transactions_' || to_char(start_at, 'YYYY_MM'), start_at, end_at);
+END;
+$$ LANGUAGE plpgsql;
+
+-- секции от первой операции до трёх месяцев вперёд (дальше их создаёт TransactionPartitions)
+DO
+$$
+DECLARE
+    month DATE := date_trunc('month', COALESCE((SELECT min(created_at) FROM transactions_old), NOW()))::DATE;
+BEGIN
+    WHILE month <= date_trunc('month', NOW() + INTERVAL '3 month') LOOP
+        PERFORM create_transactions_partition(month);
+        month := (month + INTERVAL '1 month')::DATE;
+    END LOOP;
+END;
+$$;
+
+-- строки вне созданных секций (например, если планировщик не успел создать новую)
+CREATE TABLE transactions_default PARTITION OF transactions DEFAULT;
+
+INSERT INTO transactions (id, created_at, from_acc_id, to_acc_id, amount)
+SELECT id, COALESCE(created_at, NOW()), from_acc_id, to_acc_id, amount
+  FROM transactions_old;
+
+SELECT setval(pg_get_serial_sequence('transactions', 'id'),
+              COALESCE((SELECT max(id) FROM transactions), 0) + 1, false);
+
+DROP TABLE transactions_old;
+
+CREATE INDEX idx_transactions_created_at ON transactions (created_at);
+-- выписка по счёту: поиск по счёту и продолжение с последней строки страницы (created_at, id)
+CREATE INDEX idx_transactions_from_acc ON transactions (from_acc_id, created_at, id);
+CREATE INDEX idx_transactions_to_acc ON transactions (to_acc_id, created_at, id);
+
+ALTER TABLE transactions
+    ADD CONSTRAINT ACCOUNTS FOREIGN KEY (from_acc_id) REFERENCES accounts (id);
+
+ALTER TABLE transactions
+    ADD CONSTRAINT ACCOUNTSzHb0nV FOREIGN KEY (to_acc_id) REFERENCES accounts (id);
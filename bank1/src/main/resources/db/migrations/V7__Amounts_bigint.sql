@@ -0,0 +1,5 @@
+-- суммы в минимальных единицах (копейках) хранятся в BIGINT: INTEGER ограничивал остаток ~21 млн
+ALTER TABLE accounts ALTER COLUMN amount TYPE BIGINT;
+ALTER TABLE account_buckets ALTER COLUMN amount TYPE BIGINT;
+-- для секционированной таблицы тип меняется во всех секциях
+ALTER TABLE transactions ALTER COLUMN amount TYPE BIGINT;
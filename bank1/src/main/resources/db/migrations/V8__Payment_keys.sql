@@ -0,0 +1,16 @@
+-- Ключи идемпотентности платежей: повтор запроса с тем же ключом возвращает исходный результат.
+-- Строка без transaction_id - платёж с этим ключом выполняется (или выполнялся и не завершён).
+CREATE TABLE payment_keys
+(
+    idempotency_key        VARCHAR(128)                NOT NULL,
+    from_acc_id            BIGINT                      NOT NULL,
+    to_acc_id              BIGINT                      NOT NULL,
+    amount                 BIGINT                      NOT NULL,
+    transaction_id         BIGINT,
+    transaction_created_at TIMESTAMP WITHOUT TIME ZONE,
+    created_at             TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT NOW(),
+    CONSTRAINT pk_payment_keys PRIMARY KEY (idempotency_key)
+);
+
+-- для удаления ключей старше срока хранения
+CREATE INDEX idx_payment_keys_created_at ON payment_keys (created_at);
@@ -0,0 +1,29 @@
+-- Журнал проводок (режим app.transfer.mode=ledger): на каждый перевод две строки - списание (amount < 0)
+-- и зачисление (amount > 0). Строки только добавляются.
+-- Внешних ключей нет: целостность обеспечивает запись в transactions в том же запросе. Блокировки строк счетов
+-- это не убирает - FK transactions (from_acc_id, to_acc_id) по-прежнему берут FOR KEY SHARE на оба счёта,
+-- и одновременные переводы по горячему счёту создают MultiXact. Обновления счетов без изменения ключа
+-- (снимок остатка) с FOR KEY SHARE не конфликтуют, поэтому переводы журнала друг друга на строке не ждут.
+CREATE TABLE ledger_postings
+(
+    id             BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    account_id     BIGINT                                  NOT NULL,
+    transaction_id BIGINT                                  NOT NULL,
+    amount         BIGINT                                  NOT NULL,
+    created_at     TIMESTAMP WITHOUT TIME ZONE DEFAULT NOW(),
+    CONSTRAINT pk_ledger_postings PRIMARY KEY (id)
+);
+
+-- остаток после снимка и история по счёту (index-only scan)
+CREATE INDEX idx_ledger_postings_account ON ledger_postings (account_id, id) INCLUDE (amount);
+
+-- Последний снимок остатка счёта: остаток с учётом проводок до last_posting_id включительно.
+-- Нет снимка - начальный остаток берётся из accounts.amount.
+CREATE TABLE ledger_snapshots
+(
+    account_id      BIGINT                      NOT NULL,
+    balance         BIGINT                      NOT NULL,
+    last_posting_id BIGINT                      NOT NULL,
+    created_at      TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT NOW(),
+    CONSTRAINT pk_ledger_snapshots PRIMARY KEY (account_id)
+);
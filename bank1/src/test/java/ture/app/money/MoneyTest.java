@@ -0,0 +1,107 @@
+package ture.app.money;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Табличные проверки кодека сумм: границы long, знак, пробелы и число знаков после точки
+class MoneyTest {
+
+    @ParameterizedTest(name = "parse(\"{0}\") = {1}")
+    @CsvSource(delimiter = '|', ignoreLeadingAndTrailingWhitespace = false, value = {
+            "0|0",
+            "-0|0",
+            "+0|0",
+            "0.00|0",
+            "1|100",
+            "1.5|150",
+            "1.05|105",
+            "007.10|710",
+            "1234.45|123445",
+            "-0.05|-5",
+            "-1|-100",
+            "+1.00|100",
+            "  12.34  |1234",
+            "92233720368547758.07|9223372036854775807",
+            "+92233720368547758.07|9223372036854775807",
+            "-92233720368547758.08|-9223372036854775808",
+            "-92233720368547758.07|-9223372036854775807",
+    })
+    void parse(String value, long expected) {
+        assertEquals(expected, Money.parse(value));
+    }
+
+    @Test
+    void parseTrimsTabsAndNewLines() {
+        assertEquals(-1234, Money.parse("\t-12.34\n"));
+    }
+
+    @ParameterizedTest(name = "parse(\"{0}\") - неверный формат")
+    @ValueSource(strings = {"1.", ".5", "-.5", "-", "+", "--1", "+-1", "- 1", "1 2", "1,5", "1.2.3", "abc", "1e2", "0x10"})
+    void parseRejectsInvalidFormat(String value) {
+        var e = assertThrows(IllegalArgumentException.class, () -> Money.parse(value));
+        assertEquals("Amount must be in format 123.45: '" + value + "'", e.getMessage());
+    }
+
+    @ParameterizedTest(name = "parse(\"{0}\") - пустая сумма")
+    @ValueSource(strings = {"", " ", "\t\n"})
+    void parseRejectsEmpty(String value) {
+        var e = assertThrows(IllegalArgumentException.class, () -> Money.parse(value));
+        assertEquals("Amount is empty", e.getMessage());
+    }
+
+    @Test
+    void parseRejectsNull() {
+        assertThrows(IllegalArgumentException.class, () -> Money.parse(null));
+    }
+
+    @ParameterizedTest(name = "parse(\"{0}\") - больше двух знаков после точки")
+    @ValueSource(strings = {"1.234", "0.001", "-0.005", "1.000"})
+    void parseRejectsExtraDecimalPlaces(String value) {
+        var e = assertThrows(IllegalArgumentException.class, () -> Money.parse(value));
+        assertEquals("Amount must have at most 2 decimal places", e.getMessage());
+    }
+
+    @ParameterizedTest(name = "parse(\"{0}\") - вне диапазона long")
+    @ValueSource(strings = {
+            "92233720368547758.08",
+            "-92233720368547758.09",
+            "92233720368547759",
+            "100000000000000000000",
+            "-100000000000000000000"})
+    void parseRejectsOutOfRange(String value) {
+        var e = assertThrows(IllegalArgumentException.class, () -> Money.parse(value));
+        assertEquals("Amount is out of range", e.getMessage());
+    }
+
+    @ParameterizedTest(name = "format({0}) = \"{1}\"")
+    @CsvSource(delimiter = '|', value = {
+            "0|0.00",
+            "5|0.05",
+            "-5|-0.05",
+            "100|1.00",
+            "-100|-1.00",
+            "123445|1234.45",
+            "9223372036854775807|92233720368547758.07",
+            "-9223372036854775808|-92233720368547758.08",
+    })
+    void format(long minor, String expected) {
+        assertEquals(expected, Money.format(minor));
+    }
+
+    @Test
+    void formatNull() {
+        assertNull(Money.format((Long) null));
+    }
+
+    @ParameterizedTest(name = "parse(format({0})) = {0}")
+    @ValueSource(longs = {0, 1, -1, 99, -99, 100, 123445, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1})
+    void roundTrip(long minor) {
+        assertEquals(minor, Money.parse(Money.format(minor)));
+    }
+}
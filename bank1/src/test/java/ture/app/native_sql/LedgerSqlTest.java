@@ -0,0 +1,183 @@
+package ture.app.native_sql;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ture.app.cache.AccountCache;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Журнал проводок на PostgreSQL (Testcontainers, без Docker тест пропускается):
+// остаток = снимок или accounts.amount + проводки после него + корзины, снимок не меняет остаток
+@Testcontainers(disabledWithoutDocker = true)
+class LedgerSqlTest {
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+    private static LedgerSql ledgerSql;
+
+    private Long userId;
+
+    @BeforeAll
+    static void migrate() {
+        Flyway.configure()
+                .dataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword())
+                .locations("classpath:db/migrations")
+                .load()
+                .migrate();
+        var dataSource = new DriverManagerDataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        var accountCache = new AccountCache();
+        ReflectionTestUtils.setField(accountCache, "registry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(accountCache, "maxSize", 100L);
+        ReflectionTestUtils.setField(accountCache, "ttlMs", 60_000L);
+        ReflectionTestUtils.setField(accountCache, "rejectTtlMs", 1_000L);
+        accountCache.start();
+
+        ledgerSql = new LedgerSql();
+        ReflectionTestUtils.setField(ledgerSql, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(ledgerSql, "accountCache", accountCache);
+    }
+
+    @BeforeEach
+    void createUser() {
+        userId = jdbcTemplate.queryForObject(
+                "INSERT INTO users (name, email) VALUES ('ledger', 'ledger@test') RETURNING id", Long.class);
+    }
+
+    private Long account(long amount) {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO accounts (user_id, amount, name) VALUES (?, ?, gen_random_uuid()::text) RETURNING id",
+                Long.class, userId, amount);
+    }
+
+    private TransferSql.Result transfer(Long fromAccID, Long toAccID, long amount) {
+        return transactionTemplate.execute(status -> {
+            ledgerSql.lockForTransfer(fromAccID, toAccID);
+            return ledgerSql.transfer(fromAccID, toAccID, amount);
+        });
+    }
+
+    private boolean snapshot(Long accountId) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> ledgerSql.snapshot(accountId)));
+    }
+
+    private long storedAmount(Long accountId) {
+        return jdbcTemplate.queryForObject("SELECT amount FROM accounts WHERE id = ?", Long.class, accountId);
+    }
+
+    @Test
+    void balanceIsAmountPlusPostingsWithoutSnapshot() {
+        var from = account(1000);
+        var to = account(0);
+
+        var result = transfer(from, to, 300);
+
+        assertNotNull(result);
+        assertEquals(700L, result.fromAmount());
+        assertEquals(700L, ledgerSql.balance(from));
+        assertEquals(300L, ledgerSql.balance(to));
+        // строки счетов переводом не изменяются
+        assertEquals(1000L, storedAmount(from));
+        assertEquals(0L, storedAmount(to));
+    }
+
+    @Test
+    void insufficientBalanceWritesNothing() {
+        var from = account(100);
+        var to = account(0);
+
+        assertNull(transfer(from, to, 101));
+
+        assertEquals(100L, ledgerSql.balance(from));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM ledger_postings WHERE account_id IN (?, ?)", Integer.class, from, to));
+        var states = ledgerSql.diagnose(from, to);
+        assertEquals(new LedgerSql.AccountState(false, false, 100L), states.get(from));
+    }
+
+    @Test
+    void snapshotKeepsBalanceAndMovesItToAccount() {
+        var from = account(1000);
+        var to = account(0);
+        transfer(from, to, 300);
+
+        assertTrue(snapshot(from));
+        assertEquals(700L, storedAmount(from));
+        assertEquals(700L, ledgerSql.balance(from));
+        // новых проводок нет - снимок не пишется
+        assertFalse(snapshot(from));
+
+        // проводки после снимка добавляются к нему
+        transfer(from, to, 100);
+        assertEquals(600L, ledgerSql.balance(from));
+        assertEquals(700L, storedAmount(from));
+        assertTrue(snapshot(from));
+        assertEquals(600L, storedAmount(from));
+        assertEquals(600L, ledgerSql.balance(from));
+        assertEquals(400L, ledgerSql.balance(to));
+    }
+
+    @Test
+    void bucketsAreCountedButNotSnapshotted() {
+        var from = account(1000);
+        var to = account(0);
+        jdbcTemplate.update("INSERT INTO account_buckets (account_id, bucket, amount) VALUES (?, 0, 50), (?, 1, 25)",
+                from, from);
+
+        assertEquals(1075L, ledgerSql.balance(from));
+        // списание может использовать корзины
+        assertNotNull(transfer(from, to, 1050));
+        assertEquals(25L, ledgerSql.balance(from));
+
+        // снимок хранит основную часть без корзин
+        assertTrue(snapshot(from));
+        assertEquals(-50L, storedAmount(from));
+        assertEquals(25L, ledgerSql.balance(from));
+    }
+
+    @Test
+    void chunkPostingsMatchSingleTransfers() {
+        var from = account(1000);
+        var to = account(0);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            ledgerSql.lockAccounts(List.of(from, to), Set.of(from));
+            var accounts = ledgerSql.readAccounts(List.of(from, to));
+            assertEquals(1000L, accounts.get(from).getAmount());
+            assertEquals(0L, accounts.get(to).getAmount());
+
+            var rows = List.of(new BatchTransferSql.Row(from, to, 200L), new BatchTransferSql.Row(from, to, 50L));
+            var batchTransferSql = new BatchTransferSql();
+            ReflectionTestUtils.setField(batchTransferSql, "jdbcTemplate", jdbcTemplate);
+            var inserted = batchTransferSql.insertTransactions(rows);
+            ledgerSql.insertPostings(rows, inserted);
+        });
+
+        assertEquals(750L, ledgerSql.balance(from));
+        assertEquals(250L, ledgerSql.balance(to));
+        assertEquals(0L, jdbcTemplate.queryForObject(
+                "SELECT sum(amount) FROM ledger_postings WHERE account_id IN (?, ?)", Long.class, from, to));
+    }
+}
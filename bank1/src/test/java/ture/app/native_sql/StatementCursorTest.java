@@ -0,0 +1,63 @@
+package ture.app.native_sql;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Разбор курсора страницы выписки (keyset): "дата_id"
+class StatementCursorTest {
+
+    @Test
+    void parse() {
+        var cursor = StatementSql.Cursor.parse("2025-12-07T08:08:20.976_123");
+        assertEquals(LocalDateTime.of(2025, 12, 7, 8, 8, 20, 976_000_000), cursor.createdAt());
+        assertEquals(123L, cursor.id());
+    }
+
+    @Test
+    void roundTrip() {
+        var cursor = new StatementSql.Cursor(LocalDateTime.of(2025, 1, 2, 3, 4, 5, 123_456_000), Long.MAX_VALUE);
+        assertEquals(cursor, StatementSql.Cursor.parse(cursor.toString()));
+    }
+
+    @Test
+    void roundTripWholeSeconds() {
+        // LocalDateTime.toString не выводит нулевые секунды - разбор должен принять и такую дату
+        var cursor = new StatementSql.Cursor(LocalDateTime.of(2025, 1, 2, 3, 4), 7L);
+        assertEquals("2025-01-02T03:04_7", cursor.toString());
+        assertEquals(cursor, StatementSql.Cursor.parse(cursor.toString()));
+    }
+
+    @ParameterizedTest
+    @NullSource
+    @ValueSource(strings = {"", "   "})
+    void emptyCursorIsFirstPage(String value) {
+        assertNull(StatementSql.Cursor.parse(value));
+    }
+
+    @Test
+    void rejectsMissingSeparator() {
+        var e = assertThrows(IllegalArgumentException.class, () -> StatementSql.Cursor.parse("2025-12-07T08:08:20.976"));
+        assertEquals("Invalid statement cursor", e.getMessage());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2025-12-07T08:08:20.976_", "2025-12-07T08:08:20.976_abc", "2025-12-07T08:08:20.976_1.5"})
+    void rejectsInvalidId(String value) {
+        assertThrows(NumberFormatException.class, () -> StatementSql.Cursor.parse(value));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"_1", "yesterday_1", "2025-13-07T08:08:20_1", "2025-12-07_1"})
+    void rejectsInvalidDate(String value) {
+        assertThrows(DateTimeParseException.class, () -> StatementSql.Cursor.parse(value));
+    }
+}
@@ -0,0 +1,116 @@
+package ture.app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Объединение одиночных запросов в пакеты: окно, maxBatch, повторяющиеся и отсутствующие ключи, ошибки
+class BatchLoaderTest {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // ключи каждого пакетного вызова
+    private final List<Set<Long>> batches = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    private BatchLoader<Long, String> loader(long windowMs, int maxBatch, Function<Set<Long>, Map<Long, String>> load) {
+        return new BatchLoader<>("test", keys -> {
+            batches.add(keys);
+            return load.apply(keys);
+        }, executor, windowMs, maxBatch, registry);
+    }
+
+    // значения для чётных ключей, нечётных в результате нет
+    private static Map<Long, String> evenKeys(Set<Long> keys) {
+        var result = new HashMap<Long, String>();
+        for (var key : keys)
+            if(key % 2 == 0) result.put(key, "v" + key);
+        return result;
+    }
+
+    @Test
+    void keysInWindowAreLoadedInOneBatch() throws Exception {
+        var loader = loader(50, 100, BatchLoaderTest::evenKeys);
+        var first = loader.load(2L);
+        var second = loader.load(4L);
+        var third = loader.load(6L);
+
+        assertEquals("v2", first.get(5, TimeUnit.SECONDS));
+        assertEquals("v4", second.get(5, TimeUnit.SECONDS));
+        assertEquals("v6", third.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(Set.of(2L, 4L, 6L)), batches);
+        assertEquals(1, registry.get("app.loader.batch.size").summary().count());
+        assertEquals(3, registry.get("app.loader.requests").counter().count());
+    }
+
+    @Test
+    void sameKeyInWindowIsLoadedOnce() throws Exception {
+        var loader = loader(50, 100, BatchLoaderTest::evenKeys);
+        var first = loader.load(2L);
+        var repeat = loader.load(2L);
+
+        assertSame(first, repeat);
+        assertEquals("v2", repeat.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(Set.of(2L)), batches);
+    }
+
+    @Test
+    void missingKeyCompletesWithNull() throws Exception {
+        var loader = loader(10, 100, BatchLoaderTest::evenKeys);
+        assertNull(loader.load(3L).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void fullBatchIsDispatchedBeforeWindowEnds() throws Exception {
+        // окно заведомо дольше теста - пакет уходит только по maxBatch
+        var loader = loader(TimeUnit.HOURS.toMillis(1), 2, BatchLoaderTest::evenKeys);
+        var first = loader.load(2L);
+        var second = loader.load(4L);
+
+        assertEquals("v2", first.get(5, TimeUnit.SECONDS));
+        assertEquals("v4", second.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(Set.of(2L, 4L)), batches);
+
+        // следующий ключ открывает новое окно и ждёт его окончания
+        var third = loader.load(6L);
+        assertFalse(third.isDone());
+    }
+
+    @Test
+    void batchFailureCompletesAllKeysExceptionally() {
+        var error = new IllegalStateException("db is down");
+        var loader = loader(10, 100, keys -> {
+            throw error;
+        });
+        List<CompletableFuture<String>> futures = List.of(loader.load(1L), loader.load(2L));
+
+        for (var future : futures) {
+            var e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertSame(error, e.getCause());
+        }
+        assertEquals(1, batches.size());
+    }
+}
@@ -0,0 +1,175 @@
+package ture.app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ture.app.native_sql.PaymentKeysSql;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+// Ключи идемпотентности: занятие, повтор, несовпадающий повтор, аренда, запись результатов и освобождение
+class PaymentKeysTest {
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2025, 12, 7, 8, 8, 20);
+
+    private PaymentKeysSql sql;
+    private PaymentKeys keys;
+
+    @BeforeEach
+    void setUp() {
+        sql = mock(PaymentKeysSql.class);
+        keys = new PaymentKeys();
+        ReflectionTestUtils.setField(keys, "paymentKeysSql", sql);
+        ReflectionTestUtils.setField(keys, "registry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(keys, "cacheMaxSize", 100L);
+        ReflectionTestUtils.setField(keys, "cacheTtlMs", 60_000L);
+        ReflectionTestUtils.setField(keys, "leaseSeconds", 60L);
+        keys.start();
+    }
+
+    private static TransferCommand command(String key) {
+        return new TransferCommand(1L, 2L, 500L, key);
+    }
+
+    @Test
+    void emptyKeyIsNotStored() {
+        assertTrue(keys.claim(null, command(null)).isEmpty());
+        assertTrue(keys.claim("", command("")).isEmpty());
+        keys.record(command(null), 10L, CREATED_AT);
+        verifyNoInteractions(sql);
+    }
+
+    @Test
+    void tooLongKeyIsRejected() {
+        var key = "k".repeat(129);
+        var e = assertThrows(RuntimeException.class, () -> keys.claim(key, command(key)));
+        assertEquals("Idempotency key must be at most 128 characters", e.getMessage());
+        verifyNoInteractions(sql);
+    }
+
+    @Test
+    void newKeyIsClaimed() {
+        when(sql.insert("k1", 1L, 2L, 500L)).thenReturn(true);
+        assertTrue(keys.claim("k1", command("k1")).isEmpty());
+    }
+
+    @Test
+    void completedKeyReturnsOriginalResult() {
+        when(sql.insert("k1", 1L, 2L, 500L)).thenReturn(false);
+        when(sql.find("k1")).thenReturn(Optional.of(new PaymentKeysSql.Stored(1L, 2L, 500L, 10L, CREATED_AT)));
+
+        var previous = keys.claim("k1", command("k1"));
+        assertEquals(Optional.of(TransferOutcome.completed(10L, CREATED_AT)), previous);
+
+        // повтор берётся из памяти
+        keys.claim("k1", command("k1"));
+        verify(sql).find("k1");
+    }
+
+    @Test
+    void repeatWithOtherPaymentIsRejected() {
+        when(sql.insert(anyString(), anyLong(), anyLong(), anyLong())).thenReturn(false);
+        when(sql.find("k1")).thenReturn(Optional.of(new PaymentKeysSql.Stored(1L, 2L, 500L, 10L, CREATED_AT)));
+
+        var other = new TransferCommand(1L, 2L, 501L, "k1");
+        var e = assertThrows(RuntimeException.class, () -> keys.claim("k1", other));
+        assertEquals("Idempotency key is already used for another payment", e.getMessage());
+    }
+
+    @Test
+    void keyInProgressIsRejected() {
+        when(sql.insert("k1", 1L, 2L, 500L)).thenReturn(false);
+        when(sql.find("k1")).thenReturn(Optional.of(new PaymentKeysSql.Stored(1L, 2L, 500L, null, null)));
+
+        var e = assertThrows(PaymentInProgressException.class, () -> keys.claim("k1", command("k1")));
+        assertEquals("Payment with this idempotency key is in progress", e.getMessage());
+        verify(sql).reclaim("k1", 1L, 2L, 500L, 60L);
+    }
+
+    @Test
+    void keyWithExpiredLeaseIsReclaimed() {
+        when(sql.insert("k1", 1L, 2L, 500L)).thenReturn(false);
+        when(sql.reclaim("k1", 1L, 2L, 500L, 60L)).thenReturn(true);
+
+        assertTrue(keys.claim("k1", command("k1")).isEmpty());
+        verify(sql, never()).find(any());
+    }
+
+    @Test
+    void keyReleasedBetweenInsertAndSelectIsClaimedAgain() {
+        when(sql.insert("k1", 1L, 2L, 500L)).thenReturn(false, true);
+        when(sql.find("k1")).thenReturn(Optional.empty());
+
+        assertTrue(keys.claim("k1", command("k1")).isEmpty());
+    }
+
+    @Test
+    void recordedResultIsRepeatedWithoutDatabase() {
+        when(sql.complete("k1", 10L, CREATED_AT)).thenReturn(true);
+        keys.record(command("k1"), 10L, CREATED_AT);
+        verify(sql).complete("k1", 10L, CREATED_AT);
+
+        // без транзакции результат сразу попадает в память
+        assertEquals(Optional.of(TransferOutcome.completed(10L, CREATED_AT)), keys.claim("k1", command("k1")));
+        verify(sql, never()).insert(any(), any(), any(), any());
+    }
+
+    @Test
+    void recordFailsWhenKeyWasTakenOver() {
+        // ключ занят заново другим запросом и уже выполнен им - перевод этой транзакции откатывается
+        when(sql.complete("k1", 10L, CREATED_AT)).thenReturn(false);
+
+        assertThrows(PaymentInProgressException.class, () -> keys.record(command("k1"), 10L, CREATED_AT));
+
+        // результат не запомнен: повтор идёт в СУБД
+        when(sql.insert("k1", 1L, 2L, 500L)).thenReturn(false);
+        when(sql.find("k1")).thenReturn(Optional.of(new PaymentKeysSql.Stored(1L, 2L, 500L, 11L, CREATED_AT)));
+        assertEquals(Optional.of(TransferOutcome.completed(11L, CREATED_AT)), keys.claim("k1", command("k1")));
+    }
+
+    @Test
+    void recordAllFailsWhenAnyKeyWasTakenOver() {
+        when(sql.completeAll(any())).thenReturn(List.of("k2"));
+
+        assertThrows(PaymentInProgressException.class, () -> keys.recordAll(
+                List.of(command("k1"), command("k2")),
+                List.of(TransferOutcome.completed(10L, CREATED_AT), TransferOutcome.completed(11L, CREATED_AT))));
+        verify(sql, never()).releaseAll(any());
+    }
+
+    @Test
+    void recordAllCompletesSucceededAndReleasesFailed() {
+        keys.recordAll(
+                List.of(command("ok"), command("failed"), command(null)),
+                List.of(TransferOutcome.completed(10L, CREATED_AT),
+                        TransferOutcome.failed("From Amount must be greater than amount"),
+                        TransferOutcome.completed(11L, CREATED_AT)));
+
+        verify(sql).completeAll(List.of(new PaymentKeysSql.Completed("ok", 10L, CREATED_AT)));
+        verify(sql).releaseAll(List.of("failed"));
+        assertEquals(Optional.of(TransferOutcome.completed(10L, CREATED_AT)), keys.claim("ok", command("ok")));
+    }
+
+    @Test
+    void releaseAllSkipsEmptyKeysAndSurvivesErrors() {
+        doThrow(new RuntimeException("db is down")).when(sql).releaseAll(any());
+
+        keys.releaseAll(List.of(command("k1"), command(null), command("")));
+        verify(sql).releaseAll(List.of("k1"));
+    }
+}